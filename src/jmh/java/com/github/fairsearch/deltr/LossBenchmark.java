@@ -0,0 +1,108 @@
+package com.github.fairsearch.deltr;
+
+import com.github.fairsearch.deltr.models.TrainStep;
+import com.github.fairsearch.deltr.models.TrainerData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the backends of the trainer on one iteration: the cost and the gradient of all queries, on the calling
+ * thread (0 threads) or on a pool. `batchStep` is one step of mini-batch training on 5 queries, its cost should only
+ * depend on the size of the batch, not on the number of queries of the training set.
+ * It lives in the package of the trainer because the losses are package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LossBenchmark {
+
+    private static final int BATCH_SIZE = 5;
+
+    @Param({"5", "50"})
+    public int numberOfQuestions;
+
+    @Param({"20", "200"})
+    public int numberOfElementsPerQuestion;
+
+    @Param({"5", "20"})
+    public int numberOfFeatures;
+
+    @Param({"ND4J", "JAVA"})
+    public TrainerBackend backend;
+
+    @Param({"0", "4"})
+    public int numberOfThreads;
+
+    private ForkJoinPool pool;
+    private LossFunction loss;
+    private double[] omega;
+    private int[] batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TrainerData trainerData = TrainerData.create(new SyntheticDatasetCreator(this.numberOfQuestions,
+                this.numberOfElementsPerQuestion, 2, this.numberOfFeatures, 42).generateDataset());
+
+        Trainer trainer = new Trainer(1, 1, 0.001, 0.001, 0.01);
+        trainer.setBackend(this.backend);
+        if(this.numberOfThreads > 0) {
+            this.pool = new ForkJoinPool(this.numberOfThreads);
+            trainer.setPool(this.pool);
+        }
+        this.loss = trainer.lossFunction(trainerData);
+
+        Random random = new Random(42);
+        this.omega = new double[this.numberOfFeatures];
+        for(int i=0; i<this.omega.length; i++) {
+            this.omega[i] = random.nextDouble() * 0.01;
+        }
+        this.batch = new int[Math.min(BATCH_SIZE, this.numberOfQuestions)];
+        for(int i=0; i<this.batch.length; i++) {
+            this.batch[i] = this.loss.allQueries()[i];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if(this.pool != null) {
+            this.pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public double[] costAndGradient() {
+        double[] gradient = new double[this.numberOfFeatures];
+        this.loss.evaluate(this.omega, this.loss.allQueries(), gradient);
+        return gradient;
+    }
+
+    @Benchmark
+    public double[] batchStep() {
+        double[] gradient = new double[this.numberOfFeatures];
+        this.loss.evaluate(this.omega, this.batch, gradient);
+        return gradient;
+    }
+
+    @Benchmark
+    public TrainStep cost() {
+        return this.loss.evaluate(this.omega, this.loss.allQueries(), null);
+    }
+}
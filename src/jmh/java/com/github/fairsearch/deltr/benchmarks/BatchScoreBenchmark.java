@@ -0,0 +1,100 @@
+package com.github.fairsearch.deltr.benchmarks;
+
+import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.SyntheticDatasetCreator;
+import com.github.fairsearch.deltr.models.DeltrTopDocs;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scoring a block of 100000 documents (1000 queries of 100 documents) at once. The scores are reported
+ * per document, the number of feature multiplies per second is the number of documents per second times the
+ * number of features.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchScoreBenchmark {
+
+    private static final int NUMBER_OF_QUERIES = 1000;
+    private static final int NUMBER_OF_ELEMENTS_PER_QUERY = 100;
+    private static final int NUMBER_OF_ROWS = NUMBER_OF_QUERIES * NUMBER_OF_ELEMENTS_PER_QUERY;
+
+    @Param({"5", "20", "100"})
+    public int numberOfFeatures;
+
+    private Deltr deltr;
+    private double[] features;
+    private DoubleBuffer directFeatures;
+    private int[] queryOffsets;
+    private double[] scores;
+    private int[] order;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DeltrTopDocs docs = new SyntheticDatasetCreator(1, 1, 2, this.numberOfFeatures, 42).generateDataset().get(0);
+        Random random = new Random(42);
+        double[] omega = new double[this.numberOfFeatures];
+        for(int i=0; i<omega.length; i++) {
+            omega[i] = random.nextGaussian();
+        }
+        this.deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, true, 0.5, 2, omega, docs.schema());
+
+        this.features = new double[NUMBER_OF_ROWS * this.numberOfFeatures];
+        for(int i=0; i<this.features.length; i++) {
+            this.features[i] = random.nextGaussian();
+        }
+        this.directFeatures = ByteBuffer.allocateDirect(this.features.length * Double.BYTES)
+                .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        this.directFeatures.put(this.features).flip();
+
+        this.queryOffsets = new int[NUMBER_OF_QUERIES + 1];
+        for(int q=0; q<NUMBER_OF_QUERIES; q++) {
+            this.queryOffsets[q + 1] = this.queryOffsets[q] + NUMBER_OF_ELEMENTS_PER_QUERY;
+        }
+        this.scores = new double[NUMBER_OF_ROWS];
+        this.order = new int[NUMBER_OF_ROWS];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_ROWS)
+    public double[] scoreArray() {
+        this.deltr.scoreBatch(this.features, this.queryOffsets, this.scores, null);
+        return this.scores;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_ROWS)
+    public double[] scoreDirectBuffer() {
+        this.deltr.scoreBatch(this.directFeatures, this.queryOffsets, this.scores, null);
+        return this.scores;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_ROWS)
+    public int[] scoreArrayTop10() {
+        this.deltr.scoreBatch(this.features, this.queryOffsets, this.scores, this.order, 10);
+        return this.order;
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.fairsearch.deltr.benchmarks;
+
+import com.github.fairsearch.deltr.CompiledDeltr;
+import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.SyntheticDatasetCreator;
+import com.github.fairsearch.deltr.models.DeltrDoc;
+import com.github.fairsearch.deltr.models.DeltrTopDocs;
+import com.github.fairsearch.deltr.models.DeltrTopDocsImpl;
+import com.github.fairsearch.deltr.models.DenseDeltrDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares ranking and scoring a prediction set with a trained model, with the same model compiled into a class of
+ * its own and with its standardization folded into the weights. The documents have primitive features, so the
+ * scoring is not dominated by unboxing them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledRankBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int numberOfElements;
+
+    @Param({"5", "20"})
+    public int numberOfFeatures;
+
+    private Deltr deltr;
+    private CompiledDeltr compiled;
+    private CompiledDeltr folded;
+    private DeltrTopDocsImpl predictionSet;
+    private ScoreDoc[] unranked;
+    private double[] scores;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.deltr = new Deltr(1, 5, 0.001, 0.001, 0.01, true);
+        this.deltr.setSeed(42);
+        this.deltr.train(new SyntheticDatasetCreator(5, 20, 2, this.numberOfFeatures, 42).generateDataset());
+        this.compiled = CompiledDeltr.compile(this.deltr);
+        this.folded = CompiledDeltr.fold(this.deltr);
+
+        DeltrTopDocs docs = new SyntheticDatasetCreator(1, this.numberOfElements, 2, this.numberOfFeatures, 7)
+                .generateDataset().get(0);
+        DeltrDoc[] denseDocs = new DeltrDoc[docs.size()];
+        for(int j=0; j<docs.size(); j++) {
+            DeltrDoc doc = docs.doc(j);
+            denseDocs[j] = new DenseDeltrDoc(doc.id(), (float) doc.judgement(), doc.schema(),
+                    doc.features().stream().mapToDouble(Double::doubleValue).toArray());
+        }
+        this.predictionSet = new DeltrTopDocsImpl(docs.id());
+        this.predictionSet.put(denseDocs);
+        this.unranked = this.predictionSet.scoreDocs.clone();
+        this.scores = new double[docs.size()];
+    }
+
+    /**
+     * ranking reorders the documents, every ranking starts from the same order
+     */
+    @Setup(Level.Invocation)
+    public void unrank() {
+        System.arraycopy(this.unranked, 0, this.predictionSet.scoreDocs, 0, this.numberOfElements);
+    }
+
+    @Benchmark
+    public DeltrTopDocs interpretedRank() {
+        return this.deltr.rank(this.predictionSet);
+    }
+
+    @Benchmark
+    public DeltrTopDocs compiledRank() {
+        return this.compiled.rank(this.predictionSet);
+    }
+
+    @Benchmark
+    public DeltrTopDocs foldedRank() {
+        return this.folded.rank(this.predictionSet);
+    }
+
+    @Benchmark
+    public double[] interpretedScore() {
+        this.deltr.score(this.predictionSet, this.scores, null);
+        return this.scores;
+    }
+
+    @Benchmark
+    public double[] compiledScore() {
+        this.compiled.score(this.predictionSet, this.scores, null, this.scores.length);
+        return this.scores;
+    }
+
+    @Benchmark
+    public double[] foldedScore() {
+        this.folded.score(this.predictionSet, this.scores, null, this.scores.length);
+        return this.scores;
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.fairsearch.deltr.benchmarks;
+
+import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.SyntheticDatasetCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serializing a trained model to JSON and loading it back
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"5", "50"})
+    public int numberOfFeatures;
+
+    private Deltr deltr;
+    private String json;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.deltr = new Deltr(1, 5, 0.001, 0.001, 0.01, true);
+        this.deltr.setSeed(42);
+        this.deltr.train(new SyntheticDatasetCreator(5, 20, 2, this.numberOfFeatures, 42).generateDataset());
+        this.json = this.deltr.toJson();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return this.deltr.toJson();
+    }
+
+    @Benchmark
+    public Deltr createFromJson() {
+        return Deltr.createFromJson(this.json);
+    }
+}
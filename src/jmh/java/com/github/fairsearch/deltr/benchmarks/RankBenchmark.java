@@ -0,0 +1,78 @@
+package com.github.fairsearch.deltr.benchmarks;
+
+import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.SyntheticDatasetCreator;
+import com.github.fairsearch.deltr.models.DeltrTopDocs;
+import com.github.fairsearch.deltr.models.DeltrTopDocsImpl;
+import com.github.fairsearch.deltr.models.ScoredRanking;
+import org.apache.lucene.search.ScoreDoc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ranking a prediction set with a trained model for several numbers of candidates and features
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int numberOfElements;
+
+    @Param({"5", "20"})
+    public int numberOfFeatures;
+
+    private Deltr deltr;
+    private DeltrTopDocsImpl predictionSet;
+    private ScoreDoc[] unranked;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.deltr = new Deltr(1, 5, 0.001, 0.001, 0.01, true);
+        this.deltr.setSeed(42);
+        this.deltr.train(new SyntheticDatasetCreator(5, 20, 2, this.numberOfFeatures, 42).generateDataset());
+
+        this.predictionSet = (DeltrTopDocsImpl) new SyntheticDatasetCreator(1, this.numberOfElements, 2,
+                this.numberOfFeatures, 7).generateDataset().get(0);
+        this.unranked = this.predictionSet.scoreDocs.clone();
+    }
+
+    /**
+     * ranking reorders the documents, every ranking starts from the same order
+     */
+    @Setup(Level.Invocation)
+    public void unrank() {
+        System.arraycopy(this.unranked, 0, this.predictionSet.scoreDocs, 0, this.numberOfElements);
+    }
+
+    @Benchmark
+    public DeltrTopDocs rank() {
+        return this.deltr.rank(this.predictionSet);
+    }
+
+    @Benchmark
+    public DeltrTopDocs rankTop10() {
+        return this.deltr.rank(this.predictionSet, 10);
+    }
+
+    @Benchmark
+    public ScoredRanking score() {
+        return this.deltr.score(this.predictionSet);
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.fairsearch.deltr.benchmarks;
+
+import com.github.fairsearch.deltr.models.DeltrTopDocsImpl;
+import com.github.fairsearch.deltr.models.DenseDeltrDoc;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import org.apache.lucene.search.ScoreDoc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sorting a whole ranking with sorting only its top k documents
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReorderBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int numberOfElements;
+
+    @Param({"10", "50"})
+    public int k;
+
+    private ScoreDoc[] unsorted;
+    private DeltrTopDocsImpl docs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FeatureSchema schema = new FeatureSchema("0", "0", "1");
+        Random random = new Random(42);
+        this.unsorted = new ScoreDoc[this.numberOfElements];
+        for(int i=0; i<this.numberOfElements; i++) {
+            this.unsorted[i] = new DenseDeltrDoc(i, random.nextFloat(), schema);
+        }
+        this.docs = new DeltrTopDocsImpl(1, this.numberOfElements, this.unsorted.clone(), 0);
+    }
+
+    @Setup(Level.Invocation)
+    public void shuffle() {
+        System.arraycopy(this.unsorted, 0, this.docs.scoreDocs, 0, this.numberOfElements);
+    }
+
+    @Benchmark
+    public DeltrTopDocsImpl fullSort() {
+        this.docs.reorder();
+        return this.docs;
+    }
+
+    @Benchmark
+    public DeltrTopDocsImpl topK() {
+        this.docs.reorder(this.k);
+        return this.docs;
+    }
+}
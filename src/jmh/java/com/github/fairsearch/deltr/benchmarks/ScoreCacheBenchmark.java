@@ -0,0 +1,120 @@
+package com.github.fairsearch.deltr.benchmarks;
+
+import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.ScoreCache;
+import com.github.fairsearch.deltr.SyntheticDatasetCreator;
+import com.github.fairsearch.deltr.models.FeatureProvider;
+import com.github.fairsearch.deltr.models.TrainerData;
+import com.github.fairsearch.deltr.parsers.MappedFeatureStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scoring the candidates of a query by ID without a cache, with all their scores in the cache (hit) and
+ * with none of them in it (miss), for features in an array and in a mapped feature store
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoreCacheBenchmark {
+
+    @Param({"1000", "10000"})
+    public int numberOfElements;
+
+    @Param({"5", "20"})
+    public int numberOfFeatures;
+
+    @Param({"array", "store"})
+    public String source;
+
+    private Deltr deltr;
+    private Deltr cached;
+    private Deltr missed;
+    private ScoreCache missedCache;
+    private int[] ids;
+    private FeatureProvider candidates;
+    private double[] scores;
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.deltr = new Deltr(1, 5, 0.001, 0.001, 0.01, true);
+        this.deltr.setSeed(42);
+        this.deltr.train(new SyntheticDatasetCreator(5, 20, 2, this.numberOfFeatures, 42).generateDataset());
+
+        TrainerData block = TrainerData.create(new SyntheticDatasetCreator(1, this.numberOfElements, 2,
+                this.numberOfFeatures, 7).generateDataset());
+        this.ids = new int[block.size()];
+        for(int j=0; j<this.ids.length; j++) {
+            this.ids[j] = 1000 + 7 * j;
+        }
+        this.candidates = FeatureProvider.of(block.schema(), block.features());
+        if("store".equals(this.source)) {
+            this.path = Files.createTempFile("deltr", ".features");
+            MappedFeatureStore.write(this.candidates, this.ids, this.path);
+            this.candidates = MappedFeatureStore.open(this.path).select(this.ids);
+        }
+        this.scores = new double[block.size()];
+
+        //room for all candidates, whatever sets they fall in
+        this.cached = Deltr.createFromJson(this.deltr.toJson());
+        this.cached.setScoreCache(new ScoreCache(4 * this.numberOfElements));
+        this.cached.score(this.candidates, this.ids, this.scores, null, 0);
+
+        this.missed = Deltr.createFromJson(this.deltr.toJson());
+        this.missedCache = new ScoreCache(4 * this.numberOfElements);
+        this.missed.setScoreCache(this.missedCache);
+    }
+
+    /**
+     * every miss starts from an empty cache
+     */
+    @Setup(Level.Invocation)
+    public void invalidate() {
+        this.missedCache.invalidate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if(this.path != null) {
+            Files.delete(this.path);
+        }
+    }
+
+    @Benchmark
+    public double[] noCache() {
+        this.deltr.score(this.candidates, null, this.scores, null, 0);
+        return this.scores;
+    }
+
+    @Benchmark
+    public double[] hit() {
+        this.cached.score(this.candidates, this.ids, this.scores, null, 0);
+        return this.scores;
+    }
+
+    @Benchmark
+    public double[] miss() {
+        this.missed.score(this.candidates, this.ids, this.scores, null, 0);
+        return this.scores;
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.fairsearch.deltr.benchmarks;
+
+import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.SyntheticDatasetCreator;
+import com.github.fairsearch.deltr.TrainerBackend;
+import com.github.fairsearch.deltr.models.DeltrTopDocs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole training of a DELTR model for several sizes of the training set, with both backends
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TrainBenchmark {
+
+    @Param({"5", "50"})
+    public int numberOfQuestions;
+
+    @Param({"20", "200"})
+    public int numberOfElementsPerQuestion;
+
+    @Param({"5", "20"})
+    public int numberOfFeatures;
+
+    @Param({"10"})
+    public int numberOfIterations;
+
+    @Param({"ND4J", "JAVA"})
+    public TrainerBackend backend;
+
+    private List<DeltrTopDocs> trainSet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.trainSet = new SyntheticDatasetCreator(this.numberOfQuestions, this.numberOfElementsPerQuestion,
+                2, this.numberOfFeatures, 42).generateDataset();
+    }
+
+    @Benchmark
+    public Deltr train() {
+        Deltr deltr = new Deltr(1, this.numberOfIterations, 0.001, 0.001, 0.01, true);
+        deltr.setSeed(42);
+        deltr.setBackend(this.backend);
+        deltr.train(this.trainSet);
+        return deltr;
+    }
+}
@@ -0,0 +1,270 @@
+package com.github.fairsearch.deltr;
+
+import com.github.fairsearch.deltr.models.DeltrTopDocs;
+import com.github.fairsearch.deltr.models.FeatureProvider;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.InvocationTargetException;
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A trained DELTR model prepared for inference. It does not change when the model is trained again, and comes in two
+ * forms:
+ *
+ * - `compile` generates a class of its own, with the weights and the bias as constants of the code and the dot
+ *   product unrolled, so scoring a document does not loop over the weights. The code of a method is limited to
+ *   64 KB, so models with more than `MAX_UNROLLED_FEATURES` features are not unrolled, they are folded instead.
+ * - `fold` keeps a copy of the weights and the bias and loops over them.
+ *
+ * Both fold the standardization into the weights and a bias like the model does, omega . standardize(x) =
+ * weights . x + bias, so scoring a document is a single dot product over its raw features and the scores are
+ * exactly the scores of the model.
+ */
+public abstract class CompiledDeltr implements Scoring.Scorer {
+
+    /**
+     * the largest model whose dot product is unrolled, each feature takes at most 12 bytes of code
+     */
+    public static final int MAX_UNROLLED_FEATURES = 4000;
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final FeatureSchema schema; // schema of the features the model was trained on (or null)
+    private final int numberOfFeatures;
+
+    protected CompiledDeltr(FeatureSchema schema, int numberOfFeatures) {
+        this.schema = schema;
+        this.numberOfFeatures = numberOfFeatures;
+    }
+
+    /**
+     * Generates the class of a trained model and creates an instance of it
+     * @param deltr     The trained model
+     * @return          The compiled model
+     */
+    public static CompiledDeltr compile(Deltr deltr) {
+        checkModel(deltr);
+        if(deltr.omega.length > MAX_UNROLLED_FEATURES) {
+            return fold(deltr);
+        }
+
+        String name = CompiledDeltr.class.getName() + "$" + COUNTER.incrementAndGet();
+        byte[] bytecode = generate(name.replace('.', '/'), deltr.scoringWeights(), deltr.scoringBias());
+        Class<? extends CompiledDeltr> type = new Loader(CompiledDeltr.class.getClassLoader())
+                .define(name, bytecode).asSubclass(CompiledDeltr.class);
+        try {
+            return type.getConstructor(FeatureSchema.class, int.class).newInstance(deltr.schema, deltr.omega.length);
+        } catch(InstantiationException | IllegalAccessException | NoSuchMethodException
+                | InvocationTargetException e) {
+            throw new IllegalStateException("The compiled model cannot be created", e);
+        }
+    }
+
+    /**
+     * Folds the standardization of a trained model into its weights
+     * @param deltr     The trained model, e.g. loaded with `Deltr.createFromJson`
+     * @return          The folded model
+     */
+    public static CompiledDeltr fold(Deltr deltr) {
+        checkModel(deltr);
+        return new Folded(deltr.schema, deltr.scoringWeights().clone(), deltr.scoringBias());
+    }
+
+    /**
+     * Checks that a model is trained and that its weights can be folded
+     */
+    private static void checkModel(Deltr deltr) {
+        //check if the model is created
+        if(deltr.omega == null) {
+            throw new NullPointerException("You need to train a model first!");
+        }
+        if(deltr.shouldStandardize && deltr.schema == null) {
+            //the protected feature is not standardized
+            throw new InvalidParameterException("The model has no schema, so its protected feature is unknown!");
+        }
+    }
+
+    /**
+     * @param features      The features of documents, one document after the other
+     * @param offset        The position of the first feature of the document in `features`
+     * @return              The score of the document
+     */
+    @Override
+    public abstract double score(double[] features, int offset);
+
+    /**
+     * @param features     The features of the document, in the order of the schema of the model
+     * @return             The score of the document
+     */
+    public double score(double[] features) {
+        if(features.length != this.numberOfFeatures) {
+            throw new InvalidParameterException(String.format("The model has %d features, the document has %d!",
+                    this.numberOfFeatures, features.length));
+        }
+        return score(features, 0);
+    }
+
+    /**
+     * Ranks the prediction set like `Deltr.rank`
+     * @param docs         The prediction set to be (re)ranked
+     * @return             Returns a new set of re-ranked documents
+     */
+    public DeltrTopDocs rank(DeltrTopDocs docs) {
+        rejudge(docs);
+
+        //re-order the docs
+        docs.reorder();
+
+        return docs;
+    }
+
+    /**
+     * Ranks the prediction set like `Deltr.rank`, but only sorts the `k` best documents
+     * @param docs         The prediction set to be (re)ranked
+     * @param k            The number of documents to sort
+     * @return             Returns a new set of re-ranked documents
+     */
+    public DeltrTopDocs rank(DeltrTopDocs docs, int k) {
+        rejudge(docs);
+
+        //re-order the top k docs
+        docs.reorder(k);
+
+        return docs;
+    }
+
+    /**
+     * Replaces the judgement of each document with its score
+     */
+    private void rejudge(DeltrTopDocs docs) {
+        double[] scores = new double[docs.size()];
+        score(docs, scores, null, docs.size());
+        Scoring.rejudge(docs, scores);
+    }
+
+    /**
+     * Scores the prediction set without changing it, like `Deltr.score`
+     * @param docs         The prediction set to be scored
+     * @param scores       Filled with the score of each document, in the order of the documents in `docs`
+     * @param order        Filled with the positions of the documents, the top `k` sorted by descending score
+     *                     (can be null)
+     * @param k            The number of documents to sort
+     */
+    public void score(DeltrTopDocs docs, double[] scores, int[] order, int k) {
+        if(docs.size() == 0) {
+            return;
+        }
+
+        //the documents must have the features the model was trained on
+        FeatureSchema schema = docs.schema();
+        Scoring.checkSchema(this.schema, this.numberOfFeatures, schema);
+        Scoring.score(docs, schema, this, scores, order, k);
+    }
+
+    /**
+     * Scores the documents of a feature provider, like `Deltr.score`
+     * @param docs         The features of the documents to be scored
+     * @param scores       Filled with the score of each document
+     * @param order        Filled with the positions of the documents, the top `k` sorted by descending score
+     *                     (can be null)
+     * @param k            The number of documents to sort
+     */
+    public void score(FeatureProvider docs, double[] scores, int[] order, int k) {
+        //the documents must have the features the model was trained on
+        Scoring.checkSchema(this.schema, this.numberOfFeatures, docs.schema());
+        Scoring.score(docs, this, null, 0, null, scores, order, k);
+    }
+
+    /**
+     * Generates a subclass whose `score(double[], int)` is the dot product of the model, unrolled:
+     *
+     *      (0 + features[offset] * weight_0 + ... + features[offset + n] * weight_n) + bias
+     *
+     * The operations are the ones of `Deltr.score`, in the same order, so the scores are exactly the same.
+     */
+    private static byte[] generate(String name, double[] weights, double bias) {
+        String superName = Type.getInternalName(CompiledDeltr.class);
+        String constructorDescriptor = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(FeatureSchema.class),
+                Type.INT_TYPE);
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, name, null,
+                superName, null);
+
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", constructorDescriptor, null,
+                null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitVarInsn(Opcodes.ALOAD, 1);
+        constructor.visitVarInsn(Opcodes.ILOAD, 2);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", constructorDescriptor, false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor score = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "score", "([DI)D", null,
+                null);
+        score.visitCode();
+        score.visitInsn(Opcodes.DCONST_0);
+        for(int i=0; i<weights.length; i++) {
+            //features[offset + i]
+            score.visitVarInsn(Opcodes.ALOAD, 1);
+            score.visitVarInsn(Opcodes.ILOAD, 2);
+            score.visitLdcInsn(i);
+            score.visitInsn(Opcodes.IADD);
+            score.visitInsn(Opcodes.DALOAD);
+            score.visitLdcInsn(weights[i]);
+            score.visitInsn(Opcodes.DMUL);
+            score.visitInsn(Opcodes.DADD);
+        }
+        score.visitLdcInsn(bias);
+        score.visitInsn(Opcodes.DADD);
+        score.visitInsn(Opcodes.DRETURN);
+        score.visitMaxs(0, 0);
+        score.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * A model whose standardization is folded into the weights and a bias
+     */
+    private static final class Folded extends CompiledDeltr {
+        private final double[] weights;
+        private final double bias;
+
+        private Folded(FeatureSchema schema, double[] weights, double bias) {
+            super(schema, weights.length);
+            this.weights = weights;
+            this.bias = bias;
+        }
+
+        @Override
+        public double score(double[] features, int offset) {
+            double score = 0;
+            for(int i=0; i<this.weights.length; i++) {
+                score += this.weights[i] * features[offset + i];
+            }
+            return score + this.bias;
+        }
+    }
+
+    /**
+     * Defines the generated classes
+     */
+    private static final class Loader extends ClassLoader {
+        private Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
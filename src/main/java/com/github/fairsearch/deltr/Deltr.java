@@ -2,23 +2,41 @@ package com.github.fairsearch.deltr;
 
 import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.fairsearch.deltr.models.DeltrDoc;
+import com.github.fairsearch.deltr.models.FeatureProvider;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import com.github.fairsearch.deltr.models.FeatureStatistics;
+import com.github.fairsearch.deltr.models.ScoredRanking;
 import com.github.fairsearch.deltr.models.DeltrTopDocs;
 import com.github.fairsearch.deltr.models.TrainStep;
+import com.github.fairsearch.deltr.models.TrainerData;
+import com.github.fairsearch.deltr.optimizers.EarlyStopping;
+import com.github.fairsearch.deltr.optimizers.LearningRateSchedule;
+import com.github.fairsearch.deltr.optimizers.Optimizer;
+import com.github.fairsearch.deltr.optimizers.StopReason;
+import com.github.fairsearch.deltr.parsers.BinaryFormat;
 import com.github.fairsearch.deltr.parsers.DeltrDeserializer;
-import com.google.common.primitives.Doubles;
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
 
 /**
  *  Disparate Exposure in Learning To Rank
@@ -35,6 +53,13 @@ import java.util.stream.IntStream;
 public class Deltr {
 
     protected static final Logger LOGGER = Logger.getLogger(Deltr.class.getName());
+
+    private static final int BINARY_MAGIC = 0x444C5452; // "DLTR"
+    private static final int BINARY_VERSION = 3;
+    private static final int BINARY_HEADER_SIZE = 4 * Integer.BYTES + 6 * Double.BYTES + Integer.BYTES;
+
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+
     @JsonProperty
     private double gamma; //gamma parameter for the cost calculation in the training phase (recommended to be around 1)
 
@@ -46,6 +71,12 @@ public class Deltr {
     private double lambda; // regularization constant
     @JsonProperty("init_var")
     private double initVar; // range of values for initialization of weights
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Optimizer optimizer = null; // update of the weights in gradient descent (plain gradient descent if not set)
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LearningRateSchedule schedule = null; // learning rate of each iteration (constant if not set)
 
     @JsonProperty("standardize")
     protected boolean shouldStandardize; // boolean indicating whether the data should be standardized or not
@@ -53,8 +84,35 @@ public class Deltr {
     protected double mu = 0; // mu for standardization
     @JsonProperty
     protected double sigma = 0; // sigma for standardization
+    @JsonProperty("feature_mu")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected double[] featureMu = null; // mu of each feature for standardization (mu for every feature if not set)
+    @JsonProperty("feature_sigma")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected double[] featureSigma = null; // sigma of each feature for standardization (sigma if not set)
     @JsonProperty
     protected double[] omega = null;
+    @JsonIgnore
+    protected FeatureSchema schema = null; // schema of the features the model was trained on
+
+    @JsonIgnore
+    private Long seed = null; // seed for the initialization of the weights in the training (random if not set)
+    @JsonIgnore
+    private int batchSize = 0; // number of queries per step of the training (0 for all queries)
+    @JsonIgnore
+    private EarlyStopping earlyStopping = null; // criteria to stop the training early (never if not set)
+    @JsonIgnore
+    private TrainerBackend backend = TrainerBackend.ND4J; // implementation of the math of the training
+    @JsonIgnore
+    private ForkJoinPool pool = null; // pool computing the queries of the training in parallel (none if not set)
+    @JsonIgnore
+    private StopReason stopReason = null; // why the last training stopped
+    @JsonIgnore
+    private int version = VERSIONS.incrementAndGet(); // changes with omega, the key of the scores in the cache
+    @JsonIgnore
+    private ScoreCache scoreCache = null; // scores of the documents already scored (none if not set)
+    @JsonIgnore
+    private volatile FoldedWeights foldedWeights = null; // omega folded with mu and sigma, for the current version
 
     @JsonIgnore
     protected List<TrainStep> log = null;
@@ -120,6 +178,49 @@ public class Deltr {
         this.omega = omega;
     }
 
+    /**
+     * @param gamma gamma parameter for the cost calculation in the training phase (recommended to be around 1)
+     * @param numberOfIterations number of iteration in gradient descent
+     * @param learningRate      learning rate in gradient descent
+     * @param lambda            regularization constant
+     * @param initVar           range of values for initialization of weights
+     * @param shouldStandardize boolean indicating whether the data should be standardized or not
+     * @param mu                set mu for standardization
+     * @param sigma             set sigma for standardization
+     * @param omega             set precomputed omega
+     * @param schema            set the schema of the features omega was trained on
+     */
+    public Deltr(double gamma, int numberOfIterations, double learningRate, double lambda,
+                 double initVar, boolean shouldStandardize, double mu, double sigma, double[] omega,
+                 FeatureSchema schema){
+        this(gamma, numberOfIterations, learningRate, lambda, initVar, shouldStandardize, mu, sigma, omega);
+        this.schema = schema;
+    }
+
+    /**
+     * @param gamma gamma parameter for the cost calculation in the training phase (recommended to be around 1)
+     * @param numberOfIterations number of iteration in gradient descent
+     * @param learningRate      learning rate in gradient descent
+     * @param lambda            regularization constant
+     * @param initVar           range of values for initialization of weights
+     * @param shouldStandardize boolean indicating whether the data should be standardized or not
+     * @param mu                set mu of each feature for standardization
+     * @param sigma             set sigma of each feature for standardization
+     * @param omega             set precomputed omega
+     * @param schema            set the schema of the features omega was trained on
+     */
+    public Deltr(double gamma, int numberOfIterations, double learningRate, double lambda,
+                 double initVar, boolean shouldStandardize, double[] mu, double[] sigma, double[] omega,
+                 FeatureSchema schema){
+        this(gamma, numberOfIterations, learningRate, lambda, initVar, shouldStandardize, 0, 0, omega, schema);
+        if(mu.length != sigma.length || omega != null && omega.length != mu.length) {
+            throw new InvalidParameterException(String.format("Got %d values of mu and %d of sigma for %d features!",
+                    mu.length, sigma.length, omega == null ? mu.length : omega.length));
+        }
+        this.featureMu = mu;
+        this.featureSigma = sigma;
+    }
+
     /**
      * Trains a DELTR model on a given training set
      * @param ranks     A list of DeltrTopDocs (query-to-documents) containing `DeltrDoc` instance implementations
@@ -127,148 +228,628 @@ public class Deltr {
      * @see             DeltrDoc
      */
     public void train(List<DeltrTopDocs> ranks) {
+        //parse the data for training, all queries must have the same features
+        train(TrainerData.create(ranks));
+    }
+
+    /**
+     * Trains a DELTR model on a given training set, evaluating the cost of held-out queries in every iteration.
+     * With the patience of `setEarlyStopping`, the training stops once the held-out cost no longer improves and
+     * keeps the weights with the best held-out cost.
+     * @param ranks         A list of DeltrTopDocs (query-to-documents) containing `DeltrDoc` instance implementations
+     * @param validation    The held-out queries, with the same features as the training queries
+     * @see                 DeltrTopDocs
+     * @see                 DeltrDoc
+     */
+    public void train(List<DeltrTopDocs> ranks, List<DeltrTopDocs> validation) {
+        train(TrainerData.create(ranks), TrainerData.create(validation));
+    }
+
+    /**
+     * Trains a DELTR model on a training set that is already in primitive arrays, for example one read by
+     * `CsvTrainerDataReader` or `BinaryTrainerData`
+     * @param trainerData   The training set
+     * @see                 TrainerData
+     */
+    public void train(TrainerData trainerData) {
+        train(trainerData, null);
+    }
+
+    /**
+     * Trains a DELTR model on a training set that is already in primitive arrays, evaluating the cost of held-out
+     * queries in every iteration
+     * @param trainerData   The training set
+     * @param validation    The held-out queries, with the same features as the training set (or null)
+     * @see                 #train(List, List)
+     */
+    public void train(TrainerData trainerData, TrainerData validation) {
+        if(validation != null && !validation.schema().equals(trainerData.schema())) {
+            throw new InvalidParameterException(String.format("The held-out queries have the features (%s) instead of (%s)!",
+                    validation.schema(), trainerData.schema()));
+        }
+
         // create the trainer
         Trainer trainer = new Trainer(this.gamma, this.numberOfIterations, this.learningRate, this.lambda, this.initVar);
-
-        //parse the data for training
-        TrainerData trainerData = null;
-        for(DeltrTopDocs docs : ranks) {
-            TrainerData current = prepareData(docs);
-            if(trainerData == null) {
-                trainerData = current;
-            } else {
-                trainerData.append(current);
-            }
+        if(this.seed != null) {
+            trainer.setSeed(this.seed);
+        }
+        trainer.setBatchSize(this.batchSize);
+        if(this.optimizer != null) {
+            trainer.setOptimizer(this.optimizer);
         }
+        if(this.schedule != null) {
+            trainer.setSchedule(this.schedule);
+        }
+        trainer.setEarlyStopping(this.earlyStopping);
+        trainer.setPool(this.pool);
+        trainer.setBackend(this.backend);
 
         // standardize data if required
         if(this.shouldStandardize) {
-            this.mu = trainerData.featureMatrix.meanNumber().doubleValue();
-            this.sigma = trainerData.featureMatrix.stdNumber().doubleValue();
-            trainerData.featureMatrix = trainerData.featureMatrix.sub(this.mu).div(this.sigma);
-            trainerData.featureMatrix.putColumn(trainerData.protectedElementFeatureIndex,
-                                Nd4j.create(IntStream.of(trainerData.protectedElementFeature)
-                                        .mapToDouble((x) -> (double) x).toArray()));
+            //the mean and the standard deviation of each feature, in one pass over the rows
+            FeatureStatistics statistics = FeatureStatistics.of(trainerData.features(),
+                    trainerData.numberOfFeatures());
+            this.featureMu = statistics.means();
+            this.featureSigma = statistics.standardDeviations();
+            for(int i=0; i<this.featureSigma.length; i++) {
+                //a constant feature is only centered
+                if(this.featureSigma[i] == 0) {
+                    this.featureSigma[i] = 1;
+                }
+            }
         }
+        //the backend standardizes the rows, the held-out ones like the training ones, as it copies them
+        Standardization standardization = this.shouldStandardize ? new Standardization(this.featureMu,
+                this.featureSigma, trainerData.schema().protectedFeatureIndex()) : null;
 
-        this.omega = trainer.train(trainerData.queryIds, trainerData.protectedElementFeature,
-                trainerData.featureMatrix, trainerData.trainingScores);
+        this.omega = trainer.train(trainerData, validation, standardization);
+        this.schema = trainerData.schema();
+        this.version = VERSIONS.incrementAndGet();
 
         this.log = trainer.getLog();
+        this.stopReason = trainer.getStopReason();
+    }
+
+    /**
+     * mu of feature `i` for standardization
+     */
+    double mu(int i) {
+        return this.featureMu == null ? this.mu : this.featureMu[i];
+    }
+
+    /**
+     * sigma of feature `i` for standardization
+     */
+    double sigma(int i) {
+        return this.featureSigma == null ? this.sigma : this.featureSigma[i];
     }
 
     /**
-     * Uses the trained DELTR model to rank the prediction set
+     * Uses the trained DELTR model to rank the prediction set. The judgement of each document is replaced by its
+     * score and the documents are re-ordered, their features are left untouched.
      * @param docs         The prediction set to be (re)ranked
      * @return             Returns a new set of re-ranked documents
      * @see                DeltrTopDocs
      * @see                DeltrDoc
      */
     public DeltrTopDocs rank(DeltrTopDocs docs) {
+        rejudge(docs);
+
+        //re-order the docs
+        docs.reorder();
+
+        return docs;
+    }
+
+    /**
+     * Uses the trained DELTR model to rank the prediction set, but only sorts the `k` best documents. They are
+     * placed at the top of the set, followed by the rest of the documents in no particular order.
+     * @param docs         The prediction set to be (re)ranked
+     * @param k            The number of documents to sort
+     * @return             Returns a new set of re-ranked documents
+     * @see                DeltrTopDocs
+     * @see                DeltrDoc
+     */
+    public DeltrTopDocs rank(DeltrTopDocs docs, int k) {
+        rejudge(docs);
+
+        //re-order the top k docs
+        docs.reorder(k);
+
+        return docs;
+    }
+
+    /**
+     * Replaces the judgement of each document with its score
+     */
+    private void rejudge(DeltrTopDocs docs) {
         //check if the model is created
         if(this.omega == null) {
             throw new NullPointerException("You need to train a model first!");
         }
 
-        // standardize data if required
-        if(this.shouldStandardize) {
-            for(int i=0; i<docs.size(); i++) {
-                DeltrDoc doc = docs.doc(i);
-                for(String key : doc.keys()) {
-                    if(!key.equals(doc.protectedFeatureName()))
-                        doc.put(key, (doc.feature(key) - this.mu)/this.sigma);
-                }
-            }
+        //re-calculate the judgement for each document
+        double[] scores = new double[docs.size()];
+        score(docs, scores, null);
+        Scoring.rejudge(docs, scores);
+    }
+
+    /**
+     * Uses the trained DELTR model to score the prediction set without changing it, so the same documents can be
+     * scored concurrently
+     * @param docs         The prediction set to be scored
+     * @return             The score of each document and the ordering of the documents by descending score
+     * @see                ScoredRanking
+     */
+    public ScoredRanking score(DeltrTopDocs docs) {
+        double[] scores = new double[docs.size()];
+        int[] order = new int[docs.size()];
+        score(docs, scores, order);
+        return new ScoredRanking(scores, order);
+    }
+
+    /**
+     * Uses the trained DELTR model to score the prediction set without changing it, filling the given buffers
+     * @param docs         The prediction set to be scored
+     * @param scores       Filled with the score of each document, in the order of the documents in `docs`
+     * @param order        Filled with the positions of the documents sorted by descending score (can be null)
+     */
+    public void score(DeltrTopDocs docs, double[] scores, int[] order) {
+        score(docs, scores, order, docs.size());
+    }
+
+    /**
+     * Uses the trained DELTR model to score the prediction set without changing it, filling the given buffers. Only
+     * the `k` best documents are sorted, the rest of `order` follows them in no particular order.
+     * @param docs         The prediction set to be scored
+     * @param scores       Filled with the score of each document, in the order of the documents in `docs`
+     * @param order        Filled with the positions of the documents, the top `k` sorted by descending score
+     *                     (can be null)
+     * @param k            The number of documents to sort
+     */
+    public void score(DeltrTopDocs docs, double[] scores, int[] order, int k) {
+        //check if the model is created
+        if(this.omega == null) {
+            throw new NullPointerException("You need to train a model first!");
         }
 
-        //re-calculate the judgement for each document
-        for(int j=0; j<docs.size(); j++) {
-            DeltrDoc doc = docs.doc(j);
-            double dotProduct = 0;
-            for(int i=0; i<doc.size(); i++) {
-                dotProduct += doc.feature(i) * this.omega[i];
-            }
-            doc.rejudge(dotProduct);
+        if(docs.size() == 0) {
+            return;
         }
 
-        //re-order the docs
-        docs.reorder();
+        //the documents must have the features omega was trained on
+        FeatureSchema schema = docs.schema();
+        Scoring.checkSchema(this.schema, this.omega.length, schema);
+        Scoring.score(docs, schema, foldedWeights(schema.protectedFeatureIndex()), scores, order, k);
+    }
 
-        return docs;
+    /**
+     * Uses the trained DELTR model to score one document from the values of its features
+     * @param features     The features of the document, in the order of the schema of the model (see `getSchema`)
+     * @return             The score of the document
+     */
+    public double score(double[] features) {
+        //check if the model is created
+        if(this.omega == null) {
+            throw new NullPointerException("You need to train a model first!");
+        }
+        if(features.length != this.omega.length) {
+            throw new InvalidParameterException(String.format("The model has %d features, the document has %d!",
+                    this.omega.length, features.length));
+        }
+        if(this.shouldStandardize && this.schema == null) {
+            //the protected feature is not standardized
+            throw new InvalidParameterException("The model has no schema, so its protected feature is unknown!");
+        }
+        return foldedWeights(this.schema == null ? -1 : this.schema.protectedFeatureIndex()).score(features, 0);
+    }
+
+    /**
+     * Uses the trained DELTR model to score the documents of a feature provider, e.g. candidates whose features are
+     * read from arrays, buffers or an index, without a `DeltrDoc` per document
+     * @param docs         The features of the documents to be scored
+     * @return             The score of each document and the ordering of the documents by descending score
+     * @see                FeatureProvider
+     */
+    public ScoredRanking score(FeatureProvider docs) {
+        double[] scores = new double[docs.numberOfDocuments()];
+        int[] order = new int[docs.numberOfDocuments()];
+        score(docs, scores, order, docs.numberOfDocuments());
+        return new ScoredRanking(scores, order);
+    }
+
+    /**
+     * Uses the trained DELTR model to score the documents of a feature provider, filling the given buffers. Only the
+     * `k` best documents are sorted, the rest of `order` follows them in no particular order.
+     * @param docs         The features of the documents to be scored
+     * @param scores       Filled with the score of each document
+     * @param order        Filled with the positions of the documents, the top `k` sorted by descending score
+     *                     (can be null)
+     * @param k            The number of documents to sort
+     */
+    public void score(FeatureProvider docs, double[] scores, int[] order, int k) {
+        score(docs, null, scores, order, k);
+    }
+
+    /**
+     * Uses the trained DELTR model to score the documents of a feature provider, keeping their scores in the cache of
+     * the model (see `setScoreCache`) by their corpus-wide IDs, e.g. the candidates of a query selected from a
+     * `MappedFeatureStore` by ID. The features of a document found in the cache are not read.
+     * @param docs         The features of the documents to be scored
+     * @param ids          The corpus-wide ID of each document, the key of its score in the cache
+     * @return             The score of each document and the ordering of the documents by descending score
+     * @see                ScoreCache
+     */
+    public ScoredRanking score(FeatureProvider docs, int[] ids) {
+        double[] scores = new double[docs.numberOfDocuments()];
+        int[] order = new int[docs.numberOfDocuments()];
+        score(docs, ids, scores, order, docs.numberOfDocuments());
+        return new ScoredRanking(scores, order);
+    }
+
+    /**
+     * Uses the trained DELTR model to score the documents of a feature provider, keeping their scores in the cache of
+     * the model by their corpus-wide IDs, and fills the given buffers. Only the `k` best documents are sorted, the
+     * rest of `order` follows them in no particular order.
+     * @param docs         The features of the documents to be scored
+     * @param ids          The corpus-wide ID of each document, the key of its score in the cache (null to not use
+     *                     the cache)
+     * @param scores       Filled with the score of each document
+     * @param order        Filled with the positions of the documents, the top `k` sorted by descending score
+     *                     (can be null)
+     * @param k            The number of documents to sort
+     */
+    public void score(FeatureProvider docs, int[] ids, double[] scores, int[] order, int k) {
+        //check if the model is created
+        if(this.omega == null) {
+            throw new NullPointerException("You need to train a model first!");
+        }
+
+        //the documents must have the features omega was trained on
+        FeatureSchema schema = docs.schema();
+        Scoring.checkSchema(this.schema, this.omega.length, schema);
+        FoldedWeights folded = foldedWeights(schema.protectedFeatureIndex());
+
+        //the scores of the documents scored before, keyed by the version of the weights they are computed with
+        ScoreCache cache = ids == null ? null : this.scoreCache;
+        Scoring.score(docs, folded, cache, folded.version, ids, scores, order, k);
+    }
+
+    /**
+     * Scores many queries at once, e.g. for an offline evaluation. The features of all documents are in one block,
+     * one document after the other, with the features of each document in the order of the schema of the model
+     * (see `getSchema`). The documents of query q are the rows from `queryOffsets[q]` to `queryOffsets[q + 1]`.
+     * @param features         The features of all documents, one document after the other
+     * @param queryOffsets     The first row of each query, followed by the row after the last query
+     * @param scores           Filled with the score of each row
+     * @param order            Filled, for the rows of each query, with the rows of the query sorted by descending
+     *                         score (can be null)
+     */
+    public void scoreBatch(double[] features, int[] queryOffsets, double[] scores, int[] order) {
+        scoreBatch(features, queryOffsets, scores, order, Integer.MAX_VALUE);
     }
 
-    private TrainerData prepareData(DeltrTopDocs docs) {
-        TrainerData result = new TrainerData();
+    /**
+     * Scores many queries at once, only sorting the `k` best documents of each query
+     * @param features         The features of all documents, one document after the other
+     * @param queryOffsets     The first row of each query, followed by the row after the last query
+     * @param scores           Filled with the score of each row
+     * @param order            Filled, for the rows of each query, with the rows of the query, the top `k` sorted by
+     *                         descending score (can be null)
+     * @param k                The number of documents to sort per query
+     * @see                    #scoreBatch(double[], int[], double[], int[])
+     */
+    public void scoreBatch(double[] features, int[] queryOffsets, double[] scores, int[] order, int k) {
+        checkBatch(features.length, queryOffsets, scores, order);
+        double[] weights = scoringWeights();
+        double bias = scoringBias();
 
-        //create the array of query ids
-        result.queryIds = new int[docs.size()];
-        Arrays.fill(result.queryIds, docs.id());
+        int numberOfFeatures = weights.length;
+        int numberOfRows = queryOffsets[queryOffsets.length - 1];
+        int row = queryOffsets[0];
+        //four documents at a time, so that the weights are loaded once for all of them
+        for(; row + 4 <= numberOfRows; row += 4) {
+            int offset0 = row * numberOfFeatures;
+            int offset1 = offset0 + numberOfFeatures;
+            int offset2 = offset1 + numberOfFeatures;
+            int offset3 = offset2 + numberOfFeatures;
+            double score0 = 0, score1 = 0, score2 = 0, score3 = 0;
+            for(int i=0; i<numberOfFeatures; i++) {
+                double weight = weights[i];
+                score0 += weight * features[offset0 + i];
+                score1 += weight * features[offset1 + i];
+                score2 += weight * features[offset2 + i];
+                score3 += weight * features[offset3 + i];
+            }
+            scores[row] = score0 + bias;
+            scores[row + 1] = score1 + bias;
+            scores[row + 2] = score2 + bias;
+            scores[row + 3] = score3 + bias;
+        }
+        for(; row<numberOfRows; row++) {
+            int offset = row * numberOfFeatures;
+            double score = 0;
+            for(int i=0; i<numberOfFeatures; i++) {
+                score += weights[i] * features[offset + i];
+            }
+            scores[row] = score + bias;
+        }
 
-        //initialize the protected element assignFeature and assignFeature matrix
-        result.protectedElementFeature = new int[docs.size()];
-        result.featureMatrix = Nd4j.create(docs.size(), docs.doc(0).size());
+        sortBatch(queryOffsets, scores, order, k);
+    }
 
-        //initialize this only if it's a training set
-        result.trainingScores = Nd4j.create(docs.size(), 1);
+    /**
+     * Scores many queries at once from a buffer, e.g. a block of features mapped from a file. The features of row r
+     * start at position `features.position() + r * numberOfFeatures` of the buffer, whose position is not changed.
+     * @param features         The features of all documents, one document after the other
+     * @param queryOffsets     The first row of each query, followed by the row after the last query
+     * @param scores           Filled with the score of each row
+     * @param order            Filled, for the rows of each query, with the rows of the query sorted by descending
+     *                         score (can be null)
+     * @see                    #scoreBatch(double[], int[], double[], int[])
+     */
+    public void scoreBatch(DoubleBuffer features, int[] queryOffsets, double[] scores, int[] order) {
+        scoreBatch(features, queryOffsets, scores, order, Integer.MAX_VALUE);
+    }
 
-        //find the protected element assignFeature in the assignFeature list
-        result.protectedElementFeatureIndex = docs.doc(0).protectedFeatureIndex();
+    /**
+     * Scores many queries at once from a buffer, only sorting the `k` best documents of each query
+     * @param features         The features of all documents, one document after the other
+     * @param queryOffsets     The first row of each query, followed by the row after the last query
+     * @param scores           Filled with the score of each row
+     * @param order            Filled, for the rows of each query, with the rows of the query, the top `k` sorted by
+     *                         descending score (can be null)
+     * @param k                The number of documents to sort per query
+     * @see                    #scoreBatch(DoubleBuffer, int[], double[], int[])
+     */
+    public void scoreBatch(DoubleBuffer features, int[] queryOffsets, double[] scores, int[] order, int k) {
+        if(features.hasArray() && features.position() == 0 && features.arrayOffset() == 0) {
+            scoreBatch(features.array(), queryOffsets, scores, order, k);
+            return;
+        }
 
-        for(int i=0; i<docs.size(); i++) {
-            DeltrDoc doc = docs.doc(i);
-            //assign the protected element assignFeature and assignFeature matrix
-            result.protectedElementFeature[i] = doc.isProtected() ? 1 : 0;
-            result.featureMatrix.putRow(i, Nd4j.create(Doubles.toArray(doc.features())));
+        checkBatch(features.remaining(), queryOffsets, scores, order);
+        double[] weights = scoringWeights();
+        double bias = scoringBias();
 
-            //add the training judgement for this document
-            result.trainingScores.putScalar(i, doc.judgement());
+        int numberOfFeatures = weights.length;
+        int numberOfRows = queryOffsets[queryOffsets.length - 1];
+        int position = features.position();
+        for(int row=queryOffsets[0]; row<numberOfRows; row++) {
+            int offset = position + row * numberOfFeatures;
+            double score = 0;
+            for(int i=0; i<numberOfFeatures; i++) {
+                score += weights[i] * features.get(offset + i);
+            }
+            scores[row] = score + bias;
         }
-        return result;
+
+        sortBatch(queryOffsets, scores, order, k);
     }
 
-    private static class TrainerData {
-        private int[] queryIds;
-        private int[] protectedElementFeature;
-        private INDArray featureMatrix;
-        private INDArray trainingScores;
-        private int protectedElementFeatureIndex;
+    /**
+     * Checks the arguments of a batch
+     */
+    private void checkBatch(int numberOfValues, int[] queryOffsets, double[] scores, int[] order) {
+        //check if the model is created
+        if(this.omega == null) {
+            throw new NullPointerException("You need to train a model first!");
+        }
+        if(this.shouldStandardize && this.schema == null) {
+            //the protected feature is not standardized
+            throw new InvalidParameterException("The model has no schema, so its protected feature is unknown!");
+        }
+        if(queryOffsets.length == 0 || queryOffsets[0] < 0) {
+            throw new InvalidParameterException("The query offsets must start with the first row of the first query!");
+        }
+        for(int q=1; q<queryOffsets.length; q++) {
+            if(queryOffsets[q] < queryOffsets[q - 1]) {
+                throw new InvalidParameterException(String.format("Query %d starts at row %d, before the previous one!",
+                        q, queryOffsets[q]));
+            }
+        }
 
-        private TrainerData append(TrainerData data) {
-            //copy query data
-            int[] tmp = queryIds;
-            queryIds = new int[tmp.length + data.queryIds.length];
-            System.arraycopy(tmp, 0, queryIds, 0, tmp.length);
-            System.arraycopy(data.queryIds, 0, queryIds, tmp.length, data.queryIds.length);
+        int numberOfRows = queryOffsets[queryOffsets.length - 1];
+        if((long) numberOfRows * this.omega.length > numberOfValues) {
+            throw new InvalidParameterException(String.format("Expected %d rows of %d features, got %d values!",
+                    numberOfRows, this.omega.length, numberOfValues));
+        }
+        if(scores.length < numberOfRows || (order != null && order.length < numberOfRows)) {
+            throw new InvalidParameterException(String.format("The buffers must have room for %d rows!", numberOfRows));
+        }
+    }
 
-            //copy protected assignFeature data
-            tmp = protectedElementFeature;
-            protectedElementFeature = new int[tmp.length + data.protectedElementFeature.length];
-            System.arraycopy(tmp, 0, protectedElementFeature, 0, tmp.length);
-            System.arraycopy(data.protectedElementFeature, 0, protectedElementFeature,
-                    tmp.length, data.protectedElementFeature.length);
+    /**
+     * Sorts the rows of every query of a batch
+     */
+    private static void sortBatch(int[] queryOffsets, double[] scores, int[] order, int k) {
+        if(order == null) {
+            return;
+        }
+        for(int q=0; q + 1<queryOffsets.length; q++) {
+            ScoredRanking.sort(scores, order, queryOffsets[q], queryOffsets[q + 1], k);
+        }
+    }
 
-            //create new feature matrix
-            INDArray newFeatureMatrix = Nd4j.create(featureMatrix.rows() + data.featureMatrix.rows(),
-                    featureMatrix.columns());
-            INDArray newTrainingScores = Nd4j.create(trainingScores.rows() + data.trainingScores.rows(),
-                    trainingScores.columns());
+    /**
+     * The weights of the raw features: the standardization is folded into omega, so that
+     * omega . standardize(x) = weights . x + bias
+     */
+    double[] scoringWeights() {
+        return foldedWeights(this.schema == null ? -1 : this.schema.protectedFeatureIndex()).weights;
+    }
 
+    /**
+     * The constant part of the scores once the standardization is folded into the weights
+     */
+    double scoringBias() {
+        return foldedWeights(this.schema == null ? -1 : this.schema.protectedFeatureIndex()).bias;
+    }
+
+    /**
+     * Returns omega folded with mu and sigma, computed once per version of the model (and protected feature)
+     */
+    private FoldedWeights foldedWeights(int protectedFeatureIndex) {
+        FoldedWeights folded = this.foldedWeights;
+        int version = this.version;
+        if(folded == null || folded.version != version || folded.protectedFeatureIndex != protectedFeatureIndex) {
+            folded = new FoldedWeights(version, protectedFeatureIndex, this);
+            this.foldedWeights = folded;
+        }
+        return folded;
+    }
+
+    /**
+     * The weights of the raw features and the bias of one version of the model: scoring a document takes one
+     * multiply-add per feature, its features are never standardized
+     */
+    private static final class FoldedWeights implements Scoring.Scorer {
+        private final int version;
+        private final int protectedFeatureIndex;
+        private final double[] weights;
+        private final double bias;
 
-            //copy assignFeature matrix and training scores (if any)
-            for(int i=0; i< featureMatrix.rows(); i++) {
-                newFeatureMatrix.putRow(i, featureMatrix.getRow(i));
-                newTrainingScores.putRow(i, trainingScores.getRow(i));
+        private FoldedWeights(int version, int protectedFeatureIndex, Deltr deltr) {
+            this.version = version;
+            this.protectedFeatureIndex = protectedFeatureIndex;
+            double[] omega = deltr.omega;
+            if(!deltr.shouldStandardize) {
+                this.weights = omega;
+                this.bias = 0;
+                return;
             }
-            for(int i=0; i< data.featureMatrix.rows(); i++) {
-                newFeatureMatrix.putRow(i + featureMatrix.rows(), data.featureMatrix.getRow(i));
-                newTrainingScores.putRow(i + featureMatrix.rows(), data.trainingScores.getRow(i));
+            this.weights = new double[omega.length];
+            double bias = 0;
+            for(int i=0; i<omega.length; i++) {
+                if(i == protectedFeatureIndex) {
+                    //the protected feature is not standardized
+                    this.weights[i] = omega[i];
+                } else {
+                    this.weights[i] = omega[i] / deltr.sigma(i);
+                    bias -= omega[i] * deltr.mu(i) / deltr.sigma(i);
+                }
             }
+            this.bias = bias;
+        }
+
+        /**
+         * Calculates the score of a document, in the same order of operations as `scoreBatch`
+         * @param features      The values of the features of documents
+         * @param offset        The position of the first feature of the document in `features`
+         * @return              The score of the document
+         */
+        @Override
+        public double score(double[] features, int offset) {
+            double score = 0;
+            for(int i=0; i<this.weights.length; i++) {
+                score += this.weights[i] * features[offset + i];
+            }
+            return score + this.bias;
+        }
+    }
+
+    /**
+     * Sets how the weights are updated from the gradient in every iteration of the training, e.g. with momentum or
+     * Adam instead of plain gradient descent. The optimizer is serialized with the model.
+     * @param optimizer     The optimizer, null for plain gradient descent
+     * @see                 com.github.fairsearch.deltr.optimizers.MomentumOptimizer
+     * @see                 com.github.fairsearch.deltr.optimizers.AdamOptimizer
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * Sets how the learning rate changes over the iterations of the training. The schedule is serialized with the
+     * model.
+     * @param schedule      The schedule, null for a constant learning rate
+     * @see                 com.github.fairsearch.deltr.optimizers.StepSchedule
+     * @see                 com.github.fairsearch.deltr.optimizers.CosineSchedule
+     */
+    public void setSchedule(LearningRateSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * Sets the criteria that stop the training before all its iterations are done: the relative change of the cost,
+     * the norm of the gradient and the patience on the held-out queries of `train(ranks, validation)`
+     * @param earlyStopping     The criteria, null (the default) to always do all iterations
+     * @see                     #getStopReason()
+     */
+    public void setEarlyStopping(EarlyStopping earlyStopping) {
+        this.earlyStopping = earlyStopping;
+    }
+
+    /**
+     * Keeps the scores of the documents scored with `score(FeatureProvider, int[])` in a cache, keyed by the
+     * corpus-wide IDs given with them, so a document scored again is found by its ID without reading its features.
+     * The scores are kept for the current version of the model (see `getVersion`), training the model again leaves
+     * the scores of the old omega unused. The ID of a document must stand for its features in every query, e.g. the
+     * IDs of a `MappedFeatureStore`, which is why `rank` and `score(DeltrTopDocs)` never use the cache: the IDs of
+     * `DeltrDoc` are only unique within a ranking.
+     * @param scoreCache    The cache, it can be shared by several models. Null (the default) to not cache scores.
+     * @see                 ScoreCache
+     */
+    public void setScoreCache(ScoreCache scoreCache) {
+        this.scoreCache = scoreCache;
+    }
+
+    /**
+     * Returns the version of the model, the key of its scores in a `ScoreCache`. Every model has a version of its
+     * own, which changes every time it is trained. Omega must not be changed through `getOmega`: the weights it is
+     * scored with are folded once per version.
+     * @return      The version
+     */
+    @JsonIgnore
+    public int getVersion() {
+        return this.version;
+    }
 
-            featureMatrix = newFeatureMatrix;
-            trainingScores = newTrainingScores;
+    /**
+     * Computes the cost and the gradient of the training queries in parallel, one chunk of queries per thread of
+     * the pool. Trainings with the same seed and pools of the same parallelism give the same weights.
+     * @param pool      The pool, null (the default) to train on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the implementation of the math of the training. The `JAVA` backend trains on arrays of doubles without
+     * ND4J, which is faster for the small per-query operations.
+     * @param backend   The backend, `ND4J` by default
+     */
+    public void setBackend(TrainerBackend backend) {
+        this.backend = backend;
+    }
 
-            return this;
+    /**
+     * Returns why the last training stopped. The number of iterations it did is the size of the log.
+     * @return      The reason, or null if the model has not been trained
+     */
+    @JsonIgnore
+    public StopReason getStopReason() {
+        return this.stopReason;
+    }
+
+    /**
+     * Trains with mini-batch stochastic gradient descent instead of using all queries in every iteration. The queries
+     * are shuffled in every epoch (with the seed of `setSeed` if set), each iteration is one batch.
+     * @param batchSize     The number of queries per iteration, 0 (the default) to use all queries
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize < 0) {
+            throw new InvalidParameterException(String.format("Invalid batch size %d!", batchSize));
         }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the seed for the initialization of the weights, so that training on the same data gives the same model
+     * @param seed      The seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
     }
 
     /**
@@ -279,6 +860,43 @@ public class Deltr {
         return omega;
     }
 
+    /**
+     * Returns the schema of the features the model was trained on
+     * @return      The schema, or null if it is not known (e.g. the model was created with precomputed omega)
+     */
+    @JsonIgnore
+    public FeatureSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Returns the optimizer of the training
+     * @return      The optimizer, or null for plain gradient descent
+     */
+    public Optimizer getOptimizer() {
+        return this.optimizer;
+    }
+
+    /**
+     * Returns the schedule of the learning rate in the training
+     * @return      The schedule, or null for a constant learning rate
+     */
+    public LearningRateSchedule getSchedule() {
+        return this.schedule;
+    }
+
+    @JsonGetter("features")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> featureNames() {
+        return this.schema == null ? null : this.schema.names();
+    }
+
+    @JsonGetter("protected_feature")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String protectedFeatureName() {
+        return this.schema == null ? null : this.schema.protectedFeatureName();
+    }
+
     /**
      * Returns the log of all steps in the training
      * @return      A list of `TrainStep` instances
@@ -317,6 +935,153 @@ public class Deltr {
         return null ;
     }
 
+    /**
+     * Serializes the object to the binary format of models: a header with the hyperparameters, mu, sigma, the
+     * schema, the optimizer and schedule (as JSON) and the number of per-feature mu and sigma values, followed by omega
+     * and the per-feature mu and sigma as arrays of doubles (little-endian, see `BinaryFormat`). The `log` is not
+     * serialized.
+     * @return          A buffer positioned at the start of the serialized model
+     */
+    public ByteBuffer toBinary() {
+        int numberOfFeatures = this.omega == null ? -1 : this.omega.length;
+        int numberOfStatistics = this.featureMu == null ? -1 : this.featureMu.length;
+        byte[] settings = trainingSettings();
+        int headerSize = BinaryFormat.align(BINARY_HEADER_SIZE + BinaryFormat.schemaSize(this.schema)
+                + Integer.BYTES + settings.length + Integer.BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize
+                + (Math.max(numberOfFeatures, 0) + 2 * Math.max(numberOfStatistics, 0)) * Double.BYTES)
+                .order(BinaryFormat.ORDER);
+
+        buffer.putInt(BINARY_MAGIC).putInt(BINARY_VERSION)
+                .putInt(this.numberOfIterations).putInt(this.shouldStandardize ? 1 : 0)
+                .putDouble(this.gamma).putDouble(this.learningRate).putDouble(this.lambda).putDouble(this.initVar)
+                .putDouble(this.mu).putDouble(this.sigma)
+                .putInt(numberOfFeatures);
+        BinaryFormat.putSchema(buffer, this.schema);
+        buffer.putInt(settings.length).put(settings);
+        buffer.putInt(numberOfStatistics);
+        buffer.position(headerSize);
+        DoubleBuffer values = buffer.asDoubleBuffer();
+        if(this.omega != null) {
+            values.put(this.omega);
+        }
+        if(this.featureMu != null) {
+            values.put(this.featureMu).put(this.featureSigma);
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Deserializes a Deltr object from its binary format, which is read from the position of the buffer
+     * @param buffer        The serialized model, e.g. a file mapped into memory
+     * @return              The created Deltr instance
+     */
+    public static Deltr createFromBinary(ByteBuffer buffer) {
+        buffer = buffer.slice().order(BinaryFormat.ORDER);
+        if(buffer.remaining() < BINARY_HEADER_SIZE || buffer.getInt() != BINARY_MAGIC) {
+            throw new InvalidParameterException("The buffer does not contain a DELTR model!");
+        }
+        int version = buffer.getInt();
+        if(version < 1 || version > BINARY_VERSION) {
+            throw new InvalidParameterException(String.format("Unsupported version %d of the model!", version));
+        }
+
+        int numberOfIterations = buffer.getInt();
+        boolean shouldStandardize = buffer.getInt() != 0;
+        double gamma = buffer.getDouble();
+        double learningRate = buffer.getDouble();
+        double lambda = buffer.getDouble();
+        double initVar = buffer.getDouble();
+        double mu = buffer.getDouble();
+        double sigma = buffer.getDouble();
+        int numberOfFeatures = buffer.getInt();
+        FeatureSchema schema = BinaryFormat.getSchema(buffer);
+        //the first version has no optimizer and schedule, the first two have no per-feature mu and sigma
+        byte[] settings = new byte[version > 1 ? buffer.getInt() : 0];
+        buffer.get(settings);
+        int numberOfStatistics = version > 2 ? buffer.getInt() : -1;
+
+        buffer.position(BinaryFormat.align(buffer.position()));
+        DoubleBuffer values = buffer.asDoubleBuffer();
+        double[] omega = null;
+        if(numberOfFeatures >= 0) {
+            omega = new double[numberOfFeatures];
+            values.get(omega);
+        }
+
+        Deltr deltr;
+        if(numberOfStatistics >= 0) {
+            double[] featureMu = new double[numberOfStatistics];
+            double[] featureSigma = new double[numberOfStatistics];
+            values.get(featureMu).get(featureSigma);
+            deltr = new Deltr(gamma, numberOfIterations, learningRate, lambda, initVar, shouldStandardize, featureMu,
+                    featureSigma, omega, schema);
+        } else {
+            deltr = new Deltr(gamma, numberOfIterations, learningRate, lambda, initVar, shouldStandardize, mu, sigma,
+                    omega, schema);
+        }
+        if(settings.length > 0) {
+            ObjectMapper objectMapper = new ObjectMapper();
+            try {
+                JsonNode node = objectMapper.readTree(settings);
+                if(node.hasNonNull("optimizer")) {
+                    deltr.setOptimizer(objectMapper.treeToValue(node.get("optimizer"), Optimizer.class));
+                }
+                if(node.hasNonNull("schedule")) {
+                    deltr.setSchedule(objectMapper.treeToValue(node.get("schedule"), LearningRateSchedule.class));
+                }
+            } catch (IOException e) {
+                throw new InvalidParameterException(String.format("Invalid optimizer or schedule: '%s'", e.getMessage()));
+            }
+        }
+        return deltr;
+    }
+
+    /**
+     * the optimizer and the schedule as JSON, or nothing if both are the defaults
+     */
+    private byte[] trainingSettings() {
+        if(this.optimizer == null && this.schedule == null) {
+            return new byte[0];
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode node = objectMapper.createObjectNode();
+        if(this.optimizer != null) {
+            node.set("optimizer", objectMapper.valueToTree(this.optimizer));
+        }
+        if(this.schedule != null) {
+            node.set("schedule", objectMapper.valueToTree(this.schedule));
+        }
+        return node.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the model to a file in its binary format, replacing the file if it exists
+     * @param path      The path of the file
+     * @throws IOException      if the file cannot be written
+     * @see             #toBinary()
+     */
+    public void writeBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BinaryFormat.writeFully(channel, toBinary());
+        }
+    }
+
+    /**
+     * Loads a model from a file in the binary format by mapping the file into memory
+     * @param path      The path of the file
+     * @return          The created Deltr instance
+     * @throws IOException      if the file cannot be read
+     * @see             #createFromBinary(ByteBuffer)
+     */
+    public static Deltr readBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return createFromBinary(BinaryFormat.map(channel, 0, channel.size()));
+        }
+    }
+
     @Override
     public String toString() {
         return "Deltr{" +
@@ -326,8 +1091,8 @@ public class Deltr {
                 ", lambda=" + lambda +
                 ", initVar=" + initVar +
                 ", shouldStandardize=" + shouldStandardize +
-                ", mu=" + mu +
-                ", sigma=" + sigma +
+                ", mu=" + (featureMu == null ? mu : Arrays.toString(featureMu)) +
+                ", sigma=" + (featureSigma == null ? sigma : Arrays.toString(featureSigma)) +
                 ", omega=" + Arrays.toString(omega) +
                 '}';
     }
@@ -0,0 +1,24 @@
+package com.github.fairsearch.deltr;
+
+import com.github.fairsearch.deltr.models.TrainStep;
+
+/**
+ * The loss of DELTR on one training set, as computed by a backend of the trainer. Queries are referred to by
+ * their number in the query index of the training set.
+ */
+interface LossFunction {
+
+    /**
+     * @return      the query numbers of all queries of the training set
+     */
+    int[] allQueries();
+
+    /**
+     * computes the cost of the given queries and, if `gradient` is given, its gradient
+     * @param omega         the weights of the features
+     * @param queries       the query numbers
+     * @param gradient      receives the gradient of the cost, summed over the queries (null for the cost only)
+     * @return              the cost of each query and the standard and exposure losses
+     */
+    TrainStep evaluate(double[] omega, int[] queries, double[] gradient);
+}
@@ -0,0 +1,216 @@
+package com.github.fairsearch.deltr;
+
+import com.github.fairsearch.deltr.models.TrainStep;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The loss of the `JAVA` backend of the trainer, on arrays of doubles. The rows are copied once into the grouped
+ * layout of the query index. For every query, a first pass over its rows computes the predictions, the top one
+ * probabilities and the exposures follow from them (see `TopOneProbabilities`) and a second pass sums the features
+ * weighted by the exponentials, from which the whole gradient is computed.
+ */
+final class PrimitiveLoss implements LossFunction {
+
+    private final QueryIndex index;
+    private final int[] allQueries;
+    private final int numberOfFeatures;
+    private final double[] features; // the features in the grouped layout, one row after the other
+    private final double[] toppTrainingScores; // top one probability of the judgement of each row in its query
+    private final double[] toppTrainingScoreSums; // sum of the top one probabilities of the judgements per query
+    private final double[] toppTrainingFeatures; // features weighted by toppTrainingScores, summed per query
+    private final double logNumberOfRows;
+
+    private final double gamma;
+    private final boolean noExposure;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param queryIds                  query ID of each row
+     * @param protectedElementFeature   1 if the row is protected, 0 otherwise
+     * @param features                  the features of each row, one row after the other
+     * @param numberOfFeatures          the number of features of each row
+     * @param standardization           the standardization of the rows as they are copied (or null)
+     * @param trainingScores            the judgement of each row
+     * @param gamma                     the weight of the exposure term
+     * @param pool                      the pool that computes the queries in parallel (or null)
+     */
+    PrimitiveLoss(int[] queryIds, int[] protectedElementFeature, double[] features, int numberOfFeatures,
+                  Standardization standardization, double[] trainingScores, double gamma, ForkJoinPool pool) {
+        this.index = new QueryIndex(queryIds, protectedElementFeature);
+        this.numberOfFeatures = numberOfFeatures;
+        this.gamma = gamma;
+        this.noExposure = gamma == 0;
+        this.pool = pool;
+
+        int numberOfRows = this.index.numberOfRows();
+        this.logNumberOfRows = Math.log(numberOfRows);
+
+        //copy the rows into the grouped layout, standardizing them on the way
+        int[] order = this.index.order();
+        this.features = new double[Math.multiplyExact(numberOfRows, numberOfFeatures)];
+        double[] scores = new double[numberOfRows];
+        for(int row=0; row<numberOfRows; row++) {
+            if(standardization == null) {
+                System.arraycopy(features, order[row] * numberOfFeatures, this.features, row * numberOfFeatures,
+                        numberOfFeatures);
+            } else {
+                standardization.copy(features, order[row] * numberOfFeatures, protectedElementFeature[order[row]],
+                        this.features, row * numberOfFeatures);
+            }
+            scores[row] = trainingScores[order[row]];
+        }
+
+        //the judgements do not change, so everything that only depends on them is computed once
+        int numberOfQueries = this.index.numberOfQueries();
+        this.allQueries = new int[numberOfQueries];
+        this.toppTrainingScores = new double[numberOfRows];
+        this.toppTrainingScoreSums = new double[numberOfQueries];
+        this.toppTrainingFeatures = new double[Math.multiplyExact(numberOfQueries, numberOfFeatures)];
+        TopOneProbabilities topOne = new TopOneProbabilities();
+        for(int q=0; q<numberOfQueries; q++) {
+            this.allQueries[q] = q;
+
+            int start = this.index.start(q);
+            topOne.compute(scores, start, this.index.protectedStart(q), this.index.end(q));
+            for(int row=start; row<this.index.end(q); row++) {
+                double topp = topOne.probability(row - start);
+                this.toppTrainingScores[row] = topp;
+                this.toppTrainingScoreSums[q] += topp;
+                for(int f=0; f<numberOfFeatures; f++) {
+                    this.toppTrainingFeatures[q * numberOfFeatures + f] += topp * this.features[row * numberOfFeatures + f];
+                }
+            }
+        }
+    }
+
+    @Override
+    public int[] allQueries() {
+        return this.allQueries;
+    }
+
+    @Override
+    public TrainStep evaluate(double[] omega, int[] queries, double[] gradient) {
+        //the cost has one entry per query, every chunk fills its own entries
+        double[] costs = new double[queries.length];
+
+        List<Chunk> chunks = Trainer.inChunks(this.pool, queries, (from, to) -> {
+            Chunk chunk = new Chunk(this.numberOfFeatures, gradient != null);
+            for(int i=from; i<to; i++) {
+                costs[i] = chunk.add(omega, queries[i]);
+            }
+            return chunk;
+        });
+
+        //sum the chunks in a fixed order
+        double lossExposure = 0;
+        for(Chunk chunk : chunks) {
+            lossExposure += chunk.lossExposure;
+            if(gradient != null) {
+                for(int f=0; f<this.numberOfFeatures; f++) {
+                    gradient[f] += chunk.gradient[f];
+                }
+            }
+        }
+        double lossStandard = 0;
+        for(double cost : costs) {
+            lossStandard += cost;
+        }
+
+        return new TrainStep(System.currentTimeMillis(), costs, lossStandard, lossExposure);
+    }
+
+    /**
+     * The sums of the queries of one chunk and the buffers they are computed in
+     */
+    private class Chunk {
+        private final double[] gradient; // null if only the cost is computed
+        private final double[] nonprotectedWeightedFeatures;
+        private final double[] protectedWeightedFeatures;
+        private final TopOneProbabilities topOne = new TopOneProbabilities();
+        private double[] predictions = new double[16];
+        private double lossExposure = 0;
+
+        private Chunk(int numberOfFeatures, boolean withGradient) {
+            this.gradient = withGradient ? new double[numberOfFeatures] : null;
+            this.nonprotectedWeightedFeatures = withGradient ? new double[numberOfFeatures] : null;
+            this.protectedWeightedFeatures = withGradient ? new double[numberOfFeatures] : null;
+        }
+
+        /**
+         * adds query `q` to the sums of the chunk
+         * @return      the cost of the query, weighted by the number of its documents
+         */
+        private double add(double[] omega, int q) {
+            int start = index.start(q);
+            int protectedStart = index.protectedStart(q);
+            int end = index.end(q);
+            int numberOfItems = end - start;
+            if(this.predictions.length < numberOfItems) {
+                this.predictions = new double[Math.max(numberOfItems, 2 * this.predictions.length)];
+            }
+
+            //the predictions, and the sum of the top one probabilities of the judgements times the predictions
+            double crossEntropy = 0;
+            for(int row=start; row<end; row++) {
+                int offset = row * numberOfFeatures;
+                double prediction = 0;
+                for(int f=0; f<numberOfFeatures; f++) {
+                    prediction += features[offset + f] * omega[f];
+                }
+                this.predictions[row - start] = prediction;
+                crossEntropy += toppTrainingScores[row] * prediction;
+            }
+            this.topOne.compute(this.predictions, 0, protectedStart - start, numberOfItems);
+
+            //log(topp(prediction)) = prediction - logSumExp
+            double loss = -(crossEntropy - this.topOne.logSumExp() * toppTrainingScoreSums[q]) / logNumberOfRows;
+
+            double exposureDiff = this.topOne.exposureDiff();
+            if(!noExposure) {
+                loss += Math.pow(exposureDiff, 2) * gamma;
+            }
+            this.lossExposure += exposureDiff * numberOfItems;
+
+            if(this.gradient != null) {
+                addGradient(q, start, protectedStart, end, exposureDiff);
+            }
+
+            return loss * numberOfItems;
+        }
+
+        /**
+         * adds the gradient of a query, from the sums of the features weighted by the exponentials of the predictions
+         */
+        private void addGradient(int q, int start, int protectedStart, int end, double exposureDiff) {
+            Arrays.fill(this.nonprotectedWeightedFeatures, 0);
+            Arrays.fill(this.protectedWeightedFeatures, 0);
+            for(int row=start; row<end; row++) {
+                int offset = row * numberOfFeatures;
+                double exp = this.topOne.exp(row - start);
+                double[] weightedFeatures = row < protectedStart
+                        ? this.nonprotectedWeightedFeatures : this.protectedWeightedFeatures;
+                for(int f=0; f<numberOfFeatures; f++) {
+                    weightedFeatures[f] += exp * features[offset + f];
+                }
+            }
+
+            //the gradient of a query is the same for each of its documents
+            int numberOfItems = end - start;
+            double sum = this.topOne.sum();
+            for(int f=0; f<numberOfFeatures; f++) {
+                double weightedFeatures = this.nonprotectedWeightedFeatures[f] + this.protectedWeightedFeatures[f];
+                this.gradient[f] += (weightedFeatures / sum - toppTrainingFeatures[q * numberOfFeatures + f])
+                        / logNumberOfRows * numberOfItems;
+            }
+
+            //the exposure term vanishes when there is no exposure difference
+            if(!noExposure && exposureDiff != 0) {
+                this.topOne.addExposureDiffDerivative(this.nonprotectedWeightedFeatures,
+                        this.protectedWeightedFeatures, gamma * 2 * exposureDiff * numberOfItems, this.gradient);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.fairsearch.deltr;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout of a training set grouped by query. The index is built once per training and describes a permutation
+ * of the rows in which the documents of each query are contiguous, with the non-protected documents of a query
+ * placed before the protected ones:
+ *
+ *  start(q)             protectedStart(q)              end(q)
+ *     | non-protected rows      |       protected rows     |
+ *
+ * Queries are numbered from 0 in the order of their first appearance, so every per-query structure can be
+ * an array indexed by that number.
+ */
+class QueryIndex {
+
+    private final int[] queryIds; // the query ID of each query number
+    private final int[] offsets; // start of each query, followed by the total number of rows
+    private final int[] protectedOffsets; // start of the protected rows of each query
+    private final int[] order; // original row for each row in the grouped layout
+
+    /**
+     * @param queryIds          query ID of each row
+     * @param protectedIdxs     1 if the row is protected, 0 otherwise
+     */
+    QueryIndex(int[] queryIds, int[] protectedIdxs) {
+        if(queryIds.length != protectedIdxs.length) {
+            throw new IllegalArgumentException("The query IDs and the protected attributes must have the same length!");
+        }
+
+        //number the queries in the order of their first appearance and count their rows
+        Map<Integer, Integer> queryNumbers = new HashMap<>();
+        int[] rowQuery = new int[queryIds.length];
+        int[] ids = new int[queryIds.length];
+        int[] counts = new int[queryIds.length];
+        int[] protectedCounts = new int[queryIds.length];
+        int numberOfQueries = 0;
+        for(int i=0; i<queryIds.length; i++) {
+            Integer q = queryNumbers.get(queryIds[i]);
+            if(q == null) {
+                q = numberOfQueries++;
+                queryNumbers.put(queryIds[i], q);
+                ids[q] = queryIds[i];
+            }
+            rowQuery[i] = q;
+            counts[q]++;
+            if(protectedIdxs[i] != 0) {
+                protectedCounts[q]++;
+            }
+        }
+
+        this.queryIds = Arrays.copyOf(ids, numberOfQueries);
+        this.offsets = new int[numberOfQueries + 1];
+        this.protectedOffsets = new int[numberOfQueries];
+        for(int q=0; q<numberOfQueries; q++) {
+            this.offsets[q + 1] = this.offsets[q] + counts[q];
+            this.protectedOffsets[q] = this.offsets[q + 1] - protectedCounts[q];
+        }
+
+        //place every row at the next free position of its group (the relative order of the rows is kept)
+        int[] nextNonprotected = Arrays.copyOf(this.offsets, numberOfQueries);
+        int[] nextProtected = Arrays.copyOf(this.protectedOffsets, numberOfQueries);
+        this.order = new int[queryIds.length];
+        for(int i=0; i<queryIds.length; i++) {
+            int q = rowQuery[i];
+            if(protectedIdxs[i] != 0) {
+                this.order[nextProtected[q]++] = i;
+            } else {
+                this.order[nextNonprotected[q]++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return      the number of distinct queries
+     */
+    int numberOfQueries() {
+        return this.queryIds.length;
+    }
+
+    /**
+     * @return      the total number of rows
+     */
+    int numberOfRows() {
+        return this.order.length;
+    }
+
+    /**
+     * @param q     the query number
+     * @return      the query ID of the query
+     */
+    int queryId(int q) {
+        return this.queryIds[q];
+    }
+
+    /**
+     * @param q     the query number
+     * @return      the first row of the query in the grouped layout
+     */
+    int start(int q) {
+        return this.offsets[q];
+    }
+
+    /**
+     * @param q     the query number
+     * @return      the first row of the protected documents of the query in the grouped layout
+     */
+    int protectedStart(int q) {
+        return this.protectedOffsets[q];
+    }
+
+    /**
+     * @param q     the query number
+     * @return      the row after the last row of the query in the grouped layout
+     */
+    int end(int q) {
+        return this.offsets[q + 1];
+    }
+
+    /**
+     * @param q     the query number
+     * @return      the number of documents of the query
+     */
+    int size(int q) {
+        return end(q) - start(q);
+    }
+
+    /**
+     * @return      the original row of each row in the grouped layout
+     */
+    int[] order() {
+        return this.order;
+    }
+}
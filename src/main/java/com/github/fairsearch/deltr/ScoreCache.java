@@ -0,0 +1,262 @@
+package com.github.fairsearch.deltr;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A bounded cache of the scores of documents, keyed by the version of the model (see `Deltr.getVersion`) and the
+ * corpus-wide ID of the document (see `Deltr.score(FeatureProvider, int[])`). A model gets a new version when it is
+ * created (e.g. with `createFromJson`) and every time it is trained, so the scores of an old omega are never returned
+ * for a new one, they are evicted as they stop being used. The cache can be shared by several models and threads.
+ *
+ * The ID of a document stands for its features, so the cache is only correct for features that do not depend on the
+ * query, e.g. features precomputed for each document of a corpus.
+ *
+ * The keys and the scores are kept in an array, in sets of 8 entries: a key can only be in the set its hash points
+ * to, and when that set is full an entry that was not used since the last eviction from the set is evicted (the
+ * second chance approximation of LRU). The sets are split into stripes with locks of their own, and a lookup only
+ * takes the lock of its stripe if a score of the stripe is put at the same time, so looking up a score costs about
+ * as much as reading a few values.
+ */
+public class ScoreCache {
+
+    private static final int WAYS = 8; // entries of a set
+    private static final int MAX_STRIPES = 64;
+
+    private final int maximumSize;
+    private final int ways;
+    private final int numberOfSets;
+    private final long[] entries; // the key (0 if the entry is empty) and the bits of the score of each entry
+    private final boolean[] used; // whether each entry was used since it was put or passed over by an eviction
+    private final StampedLock[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumSize       The maximum number of scores kept, rounded down to a multiple of 8 if it is larger
+     */
+    public ScoreCache(int maximumSize) {
+        if(maximumSize <= 0) {
+            throw new InvalidParameterException(String.format("Invalid cache size %d!", maximumSize));
+        }
+        this.ways = Math.min(WAYS, maximumSize);
+        this.numberOfSets = maximumSize / this.ways;
+        this.maximumSize = this.numberOfSets * this.ways;
+        this.entries = new long[2 * this.maximumSize];
+        this.used = new boolean[this.maximumSize];
+        this.stripes = new StampedLock[Integer.highestOneBit(Math.min(MAX_STRIPES, this.numberOfSets))];
+        for(int s=0; s<this.stripes.length; s++) {
+            this.stripes[s] = new StampedLock();
+        }
+    }
+
+    /**
+     * Returns the score of a document
+     * @param version       The version of the model
+     * @param doc           The ID of the document
+     * @return              The score, or NaN if it is not in the cache
+     */
+    public double get(int version, int doc) {
+        double score = lookup(key(version, doc));
+        if(Double.isNaN(score)) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return score;
+    }
+
+    /**
+     * Returns the scores of several documents, e.g. the candidates of a query
+     * @param version       The version of the model
+     * @param docs          The IDs of the documents
+     * @param scores        Filled with the score of each document, or NaN if it is not in the cache
+     * @return              The number of scores found in the cache
+     */
+    public int get(int version, int[] docs, double[] scores) {
+        int found = 0;
+        for(int j=0; j<docs.length; j++) {
+            scores[j] = lookup(key(version, docs[j]));
+            if(!Double.isNaN(scores[j])) {
+                found++;
+            }
+        }
+        this.hits.add(found);
+        this.misses.add(docs.length - found);
+        return found;
+    }
+
+    /**
+     * the score of a key, or NaN if it is not in the cache
+     */
+    private double lookup(long key) {
+        int set = set(key);
+        int start = set * this.ways;
+        StampedLock lock = stripe(set);
+
+        //read without locking, and again with the lock if the set was changed in the meantime
+        long stamp = lock.tryOptimisticRead();
+        int entry = find(key, start);
+        double score = entry < 0 ? Double.NaN : Double.longBitsToDouble(this.entries[2 * entry + 1]);
+        if(!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                entry = find(key, start);
+                score = entry < 0 ? Double.NaN : Double.longBitsToDouble(this.entries[2 * entry + 1]);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if(entry >= 0 && !this.used[entry]) {
+            //not locked: a use that is lost or marks the entry that replaced this one only changes what is evicted
+            this.used[entry] = true;
+        }
+        return score;
+    }
+
+    /**
+     * Keeps the score of a document, evicting a score of its set that was not used lately if the set is full
+     * @param version       The version of the model
+     * @param doc           The ID of the document
+     * @param score         The score
+     */
+    public void put(int version, int doc, double score) {
+        long key = key(version, doc);
+        int set = set(key);
+        int start = set * this.ways;
+        StampedLock lock = stripe(set);
+        long stamp = lock.writeLock();
+        try {
+            //the entry of the key if it is there, or else an empty entry
+            int entry = find(key, start);
+            if(entry < 0) {
+                entry = find(0, start);
+            }
+            if(entry < 0) {
+                //the first entry not used since it was passed over, the used ones get a second chance
+                for(int e=start; entry < 0; e = e + 1 < start + this.ways ? e + 1 : start) {
+                    if(this.used[e]) {
+                        this.used[e] = false;
+                    } else {
+                        entry = e;
+                    }
+                }
+                this.evictions.increment();
+            }
+            this.entries[2 * entry] = key;
+            this.entries[2 * entry + 1] = Double.doubleToRawLongBits(score);
+            this.used[entry] = false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * the entry of a key in its set, or -1 if it is not there
+     */
+    private int find(long key, int start) {
+        for(int e=start; e<start + this.ways; e++) {
+            if(this.entries[2 * e] == key) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes all scores, the counters are kept
+     */
+    public void invalidate() {
+        for(int s=0; s<this.stripes.length; s++) {
+            long stamp = this.stripes[s].writeLock();
+            try {
+                for(int set=s; set<this.numberOfSets; set+=this.stripes.length) {
+                    Arrays.fill(this.entries, 2 * set * this.ways, 2 * (set + 1) * this.ways, 0);
+                }
+            } finally {
+                this.stripes[s].unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return      The number of scores in the cache
+     */
+    public int size() {
+        int size = 0;
+        for(int s=0; s<this.stripes.length; s++) {
+            long stamp = this.stripes[s].readLock();
+            try {
+                for(int set=s; set<this.numberOfSets; set+=this.stripes.length) {
+                    for(int e=set * this.ways; e<(set + 1) * this.ways; e++) {
+                        if(this.entries[2 * e] != 0) {
+                            size++;
+                        }
+                    }
+                }
+            } finally {
+                this.stripes[s].unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return      The maximum number of scores kept
+     */
+    public int maximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * @return      The number of scores found in the cache
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return      The number of scores not found in the cache
+     */
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return      The number of scores evicted because their set was full
+     */
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    private static long key(int version, int doc) {
+        if(version == 0) {
+            //0 is the key of the empty entries
+            throw new InvalidParameterException("The versions of the models start at 1!");
+        }
+        return ((long) version << 32) | (doc & 0xFFFFFFFFL);
+    }
+
+    /**
+     * the set of a key, the bits of the version and of the ID are mixed so consecutive IDs spread over all sets
+     */
+    private int set(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        //the high 32 bits of the hash scaled to the number of sets, without a division
+        return (int) (((hash >>> 32) * this.numberOfSets) >>> 32);
+    }
+
+    private StampedLock stripe(int set) {
+        return this.stripes[set & (this.stripes.length - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size:%d/%d, hits:%d, misses:%d, evictions:%d", size(), this.maximumSize,
+                hits(), misses(), evictions());
+    }
+}
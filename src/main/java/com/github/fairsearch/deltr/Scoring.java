@@ -0,0 +1,145 @@
+package com.github.fairsearch.deltr;
+
+import com.github.fairsearch.deltr.models.ArrayFeatureProvider;
+import com.github.fairsearch.deltr.models.DeltrDoc;
+import com.github.fairsearch.deltr.models.DeltrTopDocs;
+import com.github.fairsearch.deltr.models.DenseDeltrDoc;
+import com.github.fairsearch.deltr.models.FeatureProvider;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import com.github.fairsearch.deltr.models.ScoredRanking;
+
+import java.security.InvalidParameterException;
+
+/**
+ * The loops over the documents of a ranking or of a feature provider, shared by `Deltr` and `CompiledDeltr`, which
+ * only differ in how they score the features of one document (see `Scorer`).
+ */
+final class Scoring {
+
+    /**
+     * Scores the features of one document, e.g. with the folded weights of a model
+     */
+    interface Scorer {
+        /**
+         * @param features      The features of documents, one document after the other
+         * @param offset        The position of the first feature of the document in `features`
+         * @return              The score of the document
+         */
+        double score(double[] features, int offset);
+    }
+
+    private Scoring() {
+    }
+
+    /**
+     * Checks that documents have the features a model was trained on
+     * @param modelSchema           The schema of the features the model was trained on (or null)
+     * @param numberOfFeatures      The number of features of the model
+     * @param schema                The schema of the documents
+     */
+    static void checkSchema(FeatureSchema modelSchema, int numberOfFeatures, FeatureSchema schema) {
+        if(modelSchema != null && !modelSchema.equals(schema)) {
+            throw new InvalidParameterException(String.format("The model was trained on (%s), the documents have (%s)!",
+                    modelSchema, schema));
+        }
+        if(schema.size() != numberOfFeatures) {
+            throw new InvalidParameterException(String.format("The model has %d features, the documents have %d!",
+                    numberOfFeatures, schema.size()));
+        }
+    }
+
+    /**
+     * Scores the documents of a ranking without changing it
+     * @param docs         The prediction set to be scored, not empty
+     * @param schema       The schema of the ranking, checked against the model
+     * @param scorer       Scores the features of one document
+     * @param scores       Filled with the score of each document, in the order of the documents in `docs`
+     * @param order        Filled with the positions of the documents, the top `k` sorted by descending score
+     *                     (can be null)
+     * @param k            The number of documents to sort
+     */
+    static void score(DeltrTopDocs docs, FeatureSchema schema, Scorer scorer, double[] scores, int[] order, int k) {
+        //the features of documents that are not backed by an array are copied to this buffer
+        double[] buffer = null;
+        for(int j=0; j<docs.size(); j++) {
+            DeltrDoc doc = docs.doc(j);
+            if(doc.size() != schema.size()) {
+                //the buffer and the weights are sized for the schema of the ranking
+                throw new InvalidParameterException(String.format("Document %d has %d features instead of %d!", j,
+                        doc.size(), schema.size()));
+            }
+            if(doc instanceof DenseDeltrDoc) {
+                scores[j] = scorer.score(((DenseDeltrDoc) doc).values(), 0);
+            } else {
+                if(buffer == null) {
+                    buffer = new double[schema.size()];
+                }
+                doc.copyFeatures(buffer, 0);
+                scores[j] = scorer.score(buffer, 0);
+            }
+        }
+
+        if(order != null) {
+            ScoredRanking.sort(scores, order, docs.size(), k);
+        }
+    }
+
+    /**
+     * Scores the documents of a feature provider, keeping their scores in a cache by their corpus-wide IDs if there
+     * is one. The features of a document found in the cache are not read.
+     * @param docs         The features of the documents to be scored, checked against the model
+     * @param scorer       Scores the features of one document
+     * @param cache        The cache of the scores (can be null)
+     * @param version      The version of the weights of `scorer`, the scores are kept by it in the cache
+     * @param ids          The corpus-wide ID of each document (can be null if there is no cache)
+     * @param scores       Filled with the score of each document
+     * @param order        Filled with the positions of the documents, the top `k` sorted by descending score
+     *                     (can be null)
+     * @param k            The number of documents to sort
+     */
+    static void score(FeatureProvider docs, Scorer scorer, ScoreCache cache, int version, int[] ids,
+                      double[] scores, int[] order, int k) {
+        int numberOfDocuments = docs.numberOfDocuments();
+        if(ids != null && ids.length != numberOfDocuments) {
+            throw new InvalidParameterException(String.format("Expected %d document ids, got %d!",
+                    numberOfDocuments, ids.length));
+        }
+        if(cache != null) {
+            cache.get(version, ids, scores);
+        }
+
+        //the features are read where they are if they are in an array, or else copied to a buffer
+        ArrayFeatureProvider array = docs instanceof ArrayFeatureProvider ? (ArrayFeatureProvider) docs : null;
+        double[] buffer = array == null ? new double[docs.schema().size()] : null;
+        for(int j=0; j<numberOfDocuments; j++) {
+            if(cache != null && !Double.isNaN(scores[j])) {
+                //the features of a document found in the cache are not read
+                continue;
+            }
+            if(array != null) {
+                scores[j] = scorer.score(array.features(), array.offset(j));
+            } else {
+                docs.copyFeatures(j, buffer, 0);
+                scores[j] = scorer.score(buffer, 0);
+            }
+            if(cache != null) {
+                cache.put(version, ids[j], scores[j]);
+            }
+        }
+
+        if(order != null) {
+            ScoredRanking.sort(scores, order, numberOfDocuments, k);
+        }
+    }
+
+    /**
+     * Replaces the judgement of each document of a ranking with its score
+     * @param docs         The prediction set
+     * @param scores       The score of each document, in the order of the documents in `docs`
+     */
+    static void rejudge(DeltrTopDocs docs, double[] scores) {
+        for(int j=0; j<docs.size(); j++) {
+            docs.doc(j).rejudge(scores[j]);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.fairsearch.deltr;
+
+/**
+ * The standardization of a training set, applied by the backends while they copy the rows into the grouped layout
+ * of the query index, so the features are not copied once more to be standardized. Every feature is standardized
+ * with its mu and sigma, except for the protected feature, which becomes 1 if the row is protected and 0 otherwise.
+ */
+final class Standardization {
+
+    private final double[] mu;
+    private final double[] sigma;
+    private final int protectedFeatureIndex;
+
+    /**
+     * @param mu                        mu of each feature
+     * @param sigma                     sigma of each feature
+     * @param protectedFeatureIndex     the position of the protected feature (which is not standardized)
+     */
+    Standardization(double[] mu, double[] sigma, int protectedFeatureIndex) {
+        this.mu = mu;
+        this.sigma = sigma;
+        this.protectedFeatureIndex = protectedFeatureIndex;
+    }
+
+    /**
+     * Copies the standardized features of a row
+     * @param source                The features of rows, one row after the other
+     * @param sourceOffset          The position of the first feature of the row in `source`
+     * @param protectedElement      1 if the row is protected, 0 otherwise
+     * @param target                The array the row is copied to
+     * @param targetOffset          The position of the first feature of the row in `target`
+     */
+    void copy(double[] source, int sourceOffset, int protectedElement, double[] target, int targetOffset) {
+        for(int i=0; i<this.mu.length; i++) {
+            target[targetOffset + i] = (source[sourceOffset + i] - this.mu[i]) / this.sigma[i];
+        }
+        target[targetOffset + this.protectedFeatureIndex] = protectedElement;
+    }
+}
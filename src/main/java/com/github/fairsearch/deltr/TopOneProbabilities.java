@@ -0,0 +1,134 @@
+package com.github.fairsearch.deltr;
+
+/**
+ * The top one probabilities of the documents of one query, softmax(prediction), and the exposure of its protected and
+ * non-protected groups. The exponentials are computed once per query, relative to the largest prediction, so that
+ * they cannot overflow: with m the largest prediction,
+ *
+ *      topp(i) = exp(prediction_i - m) / sum(exp(prediction_j - m))
+ *      log(topp(i)) = prediction_i - logSumExp, with logSumExp = m + log(sum(exp(prediction_j - m)))
+ *
+ * The same (shifted) exponentials are then reused by the exposures and their derivatives. An instance is a buffer
+ * for one query at a time, it is reused for the next query by calling `compute` again.
+ */
+final class TopOneProbabilities {
+
+    private static final double LOG_2 = Math.log(2);
+
+    private double[] exps = new double[16]; // exp(prediction - max) of every document of the query
+    private int numberOfItems;
+    private int numberOfNonprotected;
+    private double nonprotectedSum;
+    private double protectedSum;
+    private double logSumExp;
+
+    /**
+     * computes the top one probabilities of the documents of a query
+     * @param predictions       the predictions
+     * @param from              the first document of the query
+     * @param protectedStart    the first protected document of the query (the non-protected ones come first)
+     * @param to                the document after the last document of the query
+     */
+    void compute(double[] predictions, int from, int protectedStart, int to) {
+        this.numberOfItems = to - from;
+        this.numberOfNonprotected = protectedStart - from;
+        if(this.exps.length < this.numberOfItems) {
+            this.exps = new double[Math.max(this.numberOfItems, 2 * this.exps.length)];
+        }
+
+        double max = Double.NEGATIVE_INFINITY;
+        for(int i=from; i<to; i++) {
+            max = Math.max(max, predictions[i]);
+        }
+
+        //one pass for the exponentials and the sums of both groups
+        double nonprotectedSum = 0;
+        double protectedSum = 0;
+        for(int i=from; i<to; i++) {
+            double exp = Math.exp(predictions[i] - max);
+            this.exps[i - from] = exp;
+            if(i < protectedStart) {
+                nonprotectedSum += exp;
+            } else {
+                protectedSum += exp;
+            }
+        }
+        this.nonprotectedSum = nonprotectedSum;
+        this.protectedSum = protectedSum;
+        this.logSumExp = max + Math.log(nonprotectedSum + protectedSum);
+    }
+
+    /**
+     * @param i     the position of the document in the query
+     * @return      exp(prediction - m) of the document, proportional to its top one probability
+     */
+    double exp(int i) {
+        return this.exps[i];
+    }
+
+    /**
+     * @return      the sum of `exp` over the documents of the query
+     */
+    double sum() {
+        return this.nonprotectedSum + this.protectedSum;
+    }
+
+    /**
+     * @param i     the position of the document in the query
+     * @return      the top one probability of the document
+     */
+    double probability(int i) {
+        return this.exps[i] / sum();
+    }
+
+    /**
+     * @return      log(sum(exp(prediction))) of the query
+     */
+    double logSumExp() {
+        return this.logSumExp;
+    }
+
+    /**
+     * @return      the exposure difference between the non-protected and the protected group (never negative), 0 if
+     *              the query has no protected or no non-protected documents
+     */
+    double exposureDiff() {
+        int numberOfProtected = this.numberOfItems - this.numberOfNonprotected;
+        if(this.numberOfNonprotected == 0 || numberOfProtected == 0) {
+            return 0;
+        }
+        double exposureNProt = this.nonprotectedSum / sum() / LOG_2 / this.numberOfNonprotected;
+        double exposureProt = this.protectedSum / sum() / LOG_2 / numberOfProtected;
+        return Math.max(0, exposureNProt - exposureProt);
+    }
+
+    /**
+     * Adds the derivative of the exposure difference (without the max) with respect to the weights. The derivative
+     * of the top one probability of document i of group G is (S * sum(e_j * x_j for j in G) - e_i * sum(e_j * x_j
+     * over all documents and features)) / S^2, with e = `exp` and S = `sum`, and the exposure of G averages it over
+     * its documents, so only the sums of the features weighted by `exp` are needed.
+     * @param nonprotectedWeightedFeatures  sum(exp(i) * features(i)) over the non-protected documents
+     * @param protectedWeightedFeatures     sum(exp(i) * features(i)) over the protected documents
+     * @param scale                         the factor of the derivative
+     * @param target                        receives the scaled derivative
+     */
+    void addExposureDiffDerivative(double[] nonprotectedWeightedFeatures, double[] protectedWeightedFeatures,
+                                   double scale, double[] target) {
+        int numberOfFeatures = target.length;
+        double allWeightedFeatures = 0;
+        for(int f=0; f<numberOfFeatures; f++) {
+            allWeightedFeatures += nonprotectedWeightedFeatures[f] + protectedWeightedFeatures[f];
+        }
+
+        double sum = sum();
+        double squaredSum = sum * sum;
+        int numberOfProtected = this.numberOfItems - this.numberOfNonprotected;
+        double nonprotectedTerm = allWeightedFeatures * this.nonprotectedSum / (this.numberOfNonprotected * squaredSum);
+        double protectedTerm = allWeightedFeatures * this.protectedSum / (numberOfProtected * squaredSum);
+        for(int f=0; f<numberOfFeatures; f++) {
+            double nonprotectedDerivative = (nonprotectedWeightedFeatures[f] / sum - nonprotectedTerm) / LOG_2;
+            double protectedDerivative = (protectedWeightedFeatures[f] / sum - protectedTerm) / LOG_2;
+            target[f] += scale * (nonprotectedDerivative - protectedDerivative);
+        }
+    }
+}
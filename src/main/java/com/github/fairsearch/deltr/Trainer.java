@@ -1,18 +1,26 @@
 package com.github.fairsearch.deltr;
 
 import com.github.fairsearch.deltr.models.TrainStep;
+import com.github.fairsearch.deltr.models.TrainerData;
+import com.github.fairsearch.deltr.optimizers.ConstantSchedule;
+import com.github.fairsearch.deltr.optimizers.EarlyStopping;
+import com.github.fairsearch.deltr.optimizers.LearningRateSchedule;
+import com.github.fairsearch.deltr.optimizers.Optimizer;
+import com.github.fairsearch.deltr.optimizers.SgdOptimizer;
+import com.github.fairsearch.deltr.optimizers.StopReason;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
-import org.nd4j.linalg.ops.transforms.Transforms;
-import org.nd4j.linalg.util.ArrayUtil;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
 
 public class Trainer {
 
@@ -26,15 +34,17 @@ public class Trainer {
     private double lambda; // regularization constant
     private double initVar; // initializer for the weights
 
-    // internal training caches
-    private Map<String, INDArray> dataPerQuery;
-    private Map<String, INDArray> itemsPerQueryCache;
-    private Map<String, ItemGroup> itemsPerGroupPerQueryCache;
-    private Map<String, INDArray> normalizedToppProtDerivPerGroupDiffCache;
-    private Map<String, Double> exposureDiffCache;
-    private static Map<String, INDArray> toppCache;
+    private Long seed = null; // seed for the initialization of the weights and the batches (random if not set)
+    private int batchSize = 0; // number of queries per step of mini-batch gradient descent (0 for all queries)
+    private Optimizer optimizer = new SgdOptimizer(); // how omega is updated from the gradient
+    private LearningRateSchedule schedule = new ConstantSchedule(); // learning rate of each iteration
 
-    private List<TrainStep> log;
+    private EarlyStopping earlyStopping = null; // criteria to stop before numberOfIterations (never if not set)
+    private ForkJoinPool pool = null; // pool computing the queries in parallel (on the calling thread if not set)
+    private TrainerBackend backend = TrainerBackend.ND4J; // implementation of the math
+
+    private volatile List<TrainStep> log;
+    private volatile StopReason stopReason;
 
     public Trainer(double gamma, int numberOfIterations, double learningRate, double lambda,
                    double initVar) {
@@ -44,427 +54,625 @@ public class Trainer {
         this.lambda = lambda;
         this.initVar = initVar;
 
-        cleanCache();
-
         this.noExposure = false;
         if(this.gamma == 0) {
             this.noExposure = true;
         }
 
-        cleanLog();
+        this.log = new ArrayList<>();
     }
 
+    /**
+     * Trains the weights of the model. The trainer keeps no state between (or during) trainings apart from the
+     * log and the stop reason of the last finished one, so the same instance can train on several threads at once.
+     * @param queryIds                  query ID of each row
+     * @param protectedElementFeature   1 if the row is protected, 0 otherwise
+     * @param featureMatrix             the features (one row per document)
+     * @param trainingScores            the judgements (one row per document)
+     * @return                          the trained weights
+     */
     public double[] train(int[] queryIds, int[] protectedElementFeature, INDArray featureMatrix, INDArray trainingScores) {
-        int numberOfElements = featureMatrix.shape()[0]; // rows are elements
+        return train(queryIds, protectedElementFeature, featureMatrix, trainingScores, null, null, null, null);
+    }
+
+    /**
+     * Trains the weights of the model, evaluating the cost of held-out queries in every iteration. The held-out cost
+     * is logged and, with the patience of the early stopping, stops the training once it no longer improves.
+     * @param queryIds                              query ID of each row
+     * @param protectedElementFeature               1 if the row is protected, 0 otherwise
+     * @param featureMatrix                         the features (one row per document)
+     * @param trainingScores                        the judgements (one row per document)
+     * @param validationQueryIds                    query ID of each held-out row (null if there are none)
+     * @param validationProtectedElementFeature     1 if the held-out row is protected, 0 otherwise
+     * @param validationFeatureMatrix               the features of the held-out rows
+     * @param validationTrainingScores              the judgements of the held-out rows
+     * @return                                      the trained weights
+     */
+    public double[] train(int[] queryIds, int[] protectedElementFeature, INDArray featureMatrix, INDArray trainingScores,
+                          int[] validationQueryIds, int[] validationProtectedElementFeature,
+                          INDArray validationFeatureMatrix, INDArray validationTrainingScores) {
         int numberOfFeatures = featureMatrix.shape()[1]; // columns are features
 
-        //initialize data per query
-        Arrays.stream(queryIds).forEach((q) -> {
-            this.dataPerQuery.put(keyGen(q, trainingScores), findItemsPerGroupPerQuery(trainingScores,
-                    queryIds, q, protectedElementFeature).getJudgementsPerQuery());
-            this.dataPerQuery.put(keyGen(q, featureMatrix), findItemsPerGroupPerQuery(featureMatrix,
-                    queryIds, q, protectedElementFeature).getJudgementsPerQuery());
-        });
+        LossFunction loss = lossFunction(queryIds, protectedElementFeature, featureMatrix, trainingScores);
+        LossFunction validation = validationQueryIds == null ? null : lossFunction(validationQueryIds,
+                validationProtectedElementFeature, validationFeatureMatrix, validationTrainingScores);
 
-        //initialize omega
-        INDArray omega = Nd4j.rand(numberOfFeatures, 1).mul(this.initVar);
+        return train(loss, validation, numberOfFeatures);
+    }
 
-        INDArray costConvergeJ = Nd4j.zeros(this.numberOfIterations, 1);
-        INDArray omegaConverge = Nd4j.create(this.numberOfIterations, numberOfFeatures); // create an empty array
+    /**
+     * Trains the weights of the model on a training set in primitive arrays, evaluating the cost of held-out queries
+     * in every iteration if they are given. The `JAVA` backend trains on the arrays without using ND4J.
+     * @param trainerData       the training set
+     * @param validation        the held-out queries (or null)
+     * @return                  the trained weights
+     * @see                     #train(int[], int[], INDArray, INDArray, int[], int[], INDArray, INDArray)
+     */
+    public double[] train(TrainerData trainerData, TrainerData validation) {
+        return train(trainerData, validation, null);
+    }
 
-        cleanLog();
+    /**
+     * Trains the weights of the model on a training set that the backend standardizes while it copies the rows
+     */
+    double[] train(TrainerData trainerData, TrainerData validation, Standardization standardization) {
+        return train(lossFunction(trainerData, standardization),
+                validation == null ? null : lossFunction(validation, standardization),
+                trainerData.numberOfFeatures());
+    }
+
+    /**
+     * runs the iterations of gradient descent on a loss
+     */
+    private double[] train(LossFunction loss, LossFunction validation, int numberOfFeatures) {
+        //initialize omega, the optimizer updates it in place
+        double[] omega = initOmega(numberOfFeatures);
+        Optimizer.Update update = this.optimizer.start(numberOfFeatures);
+
+        //the queries of each step, all of them unless the steps are mini-batches
+        int numberOfQueries = loss.allQueries().length;
+        Batches batches = this.batchSize > 0 && this.batchSize < numberOfQueries
+                ? new Batches(numberOfQueries, this.batchSize, this.seed == null ? new Random() : new Random(this.seed))
+                : null;
+        int[] queries = batches == null ? loss.allQueries() : null;
+
+        List<TrainStep> log = new ArrayList<>();
+
+        //the state of the early stopping
+        StopReason stopReason = StopReason.MAX_ITERATIONS;
+        double previousCost = Double.NaN;
+        double bestValidationCost = Double.POSITIVE_INFINITY;
+        double[] bestOmega = null;
+        int iterationsWithoutImprovement = 0;
 
         for(int t=0; t<this.numberOfIterations; t++){
             // log start time
             long startTime = System.currentTimeMillis();
 
-            long stepStart = System.currentTimeMillis();
-
-            //calculate scores
-            INDArray predictedScores = featureMatrix.mmul(omega).reshape(numberOfElements, 1);
-
-            //calculate data per query predicted
-            Map<String, INDArray> dataPerQueryPredicted = new HashMap<String, INDArray>();
-            Arrays.stream(queryIds).forEach((q) -> {
-                dataPerQueryPredicted.put(keyGen(q, predictedScores), findItemsPerGroupPerQuery(predictedScores,
-                        queryIds, q, protectedElementFeature).getJudgementsPerQuery());
-
-            });
-
-            LOGGER.info(String.format("Prediction computed in %d ms", (System.currentTimeMillis() - stepStart)));
-            stepStart = System.currentTimeMillis();
-
-            //get the cost/loss for all queries
-            TrainStep trainStep = calculateCost(trainingScores, predictedScores, queryIds,
-                    protectedElementFeature, dataPerQueryPredicted);
-
-            LOGGER.info("Cost: " + (System.currentTimeMillis() - stepStart));
-            stepStart = System.currentTimeMillis();
-
-            INDArray J = trainStep.getCost().add(predictedScores.mul(predictedScores).mul(this.lambda));
-
+            if(batches != null) {
+                queries = batches.next();
+            }
 
-            INDArray grad = calculateGradient(featureMatrix, trainingScores, predictedScores, queryIds,
-                    protectedElementFeature, dataPerQueryPredicted);
+            //get the cost/loss and the gradient for the queries of the step
+            double[] gradient = new double[numberOfFeatures];
+            TrainStep trainStep = loss.evaluate(omega, queries, gradient);
+            if(queries.length < numberOfQueries) {
+                //scale the gradient of the batch to the size of the whole training set
+                double scale = (double) numberOfQueries / queries.length;
+                for(int f=0; f<numberOfFeatures; f++) {
+                    gradient[f] *= scale;
+                }
+            }
 
-            LOGGER.info(String.format("Gradient computed in %d ms", (System.currentTimeMillis() - stepStart)));
+            LOGGER.info(String.format("Cost and gradient computed in %d ms", (System.currentTimeMillis() - startTime)));
 
             //add additional items in trainStep
-            trainStep.setOmega(omega);
-            trainStep.setGrad(grad);
-            trainStep.setTotalCost(trainStep.getCost().sumNumber().doubleValue());
-
-            //recalculate omega
-            omega = omega.sub(grad.sum(0).mul(this.learningRate));
-            omega = omega.reshape(numberOfFeatures, 1);
-            omegaConverge.putRow(t, omega.transpose());
-
-            costConvergeJ.putScalar(t, J.sum(0).getDouble(0));
+            trainStep.setOmega(omega.clone());
+            trainStep.setGrad(gradient);
+            trainStep.setTotalCost(trainStep.getLossStandard());
+
+            if(validation != null) {
+                double validationCost = validation.evaluate(omega, validation.allQueries(), null).getLossStandard();
+                trainStep.setValidationCost(validationCost);
+                if(validationCost < bestValidationCost) {
+                    bestValidationCost = validationCost;
+                    bestOmega = omega.clone();
+                    iterationsWithoutImprovement = 0;
+                } else {
+                    iterationsWithoutImprovement++;
+                }
+            }
 
             // add trainStep to log
-            this.log.add(trainStep);
+            log.add(trainStep);
+
+            //stop before updating omega, the omega of this step is the result
+            if(this.earlyStopping != null) {
+                StopReason reason = this.earlyStopping.check(previousCost, trainStep.getTotalCost(), gradient);
+                if(reason == null && validation != null && this.earlyStopping.getPatience() > 0
+                        && iterationsWithoutImprovement >= this.earlyStopping.getPatience()) {
+                    //keep the weights with the best held-out cost
+                    reason = StopReason.NO_VALIDATION_IMPROVEMENT;
+                    omega = bestOmega;
+                }
+                if(reason != null) {
+                    stopReason = reason;
+                    LOGGER.info(String.format("Stopped after iteration %d: %s", t, reason));
+                    break;
+                }
+            }
+            previousCost = trainStep.getTotalCost();
+
+            //recalculate omega
+            update.apply(omega, gradient, this.schedule.learningRate(this.learningRate, t, this.numberOfIterations));
 
             // log iteration
             LOGGER.info(String.format("Iteration %d done in %d ms", t, (System.currentTimeMillis() - startTime)));
 
         }
 
-        cleanCache();
-        return omega.data().asDouble();
+        this.log = log;
+        this.stopReason = stopReason;
+        return omega;
     }
 
-
-    private void cleanCache() {
-        this.dataPerQuery = new HashMap<String, INDArray>();
-        this.itemsPerQueryCache = new HashMap<String, INDArray>();
-        this.itemsPerGroupPerQueryCache = new HashMap<String, ItemGroup>();
-        this.normalizedToppProtDerivPerGroupDiffCache = new HashMap<String, INDArray>();
-        this.exposureDiffCache = new HashMap<String, Double>();
-        Trainer.toppCache = new HashMap<String, INDArray>();
+    /**
+     * creates the loss of the backend on a training set in ND4J matrices
+     */
+    private LossFunction lossFunction(int[] queryIds, int[] protectedElementFeature, INDArray featureMatrix,
+                                      INDArray trainingScores) {
+        if(this.backend == TrainerBackend.JAVA) {
+            return new PrimitiveLoss(queryIds, protectedElementFeature, featureMatrix.dup('c').data().asDouble(),
+                    featureMatrix.shape()[1], null, trainingScores.dup().data().asDouble(), this.gamma, this.pool);
+        }
+        return new Nd4jLoss(new QueryData(queryIds, protectedElementFeature, featureMatrix, trainingScores));
     }
 
-    private void cleanLog() {
-        this.log = new ArrayList<>();
+    /**
+     * creates the loss of the backend on a training set in primitive arrays
+     */
+    LossFunction lossFunction(TrainerData trainerData) {
+        return lossFunction(trainerData, null);
     }
 
     /**
-     * calculates local gradients of current feature weights
+     * creates the loss of the backend on a training set in primitive arrays, standardized as the rows are copied
+     * into the grouped layout (if the standardization is not null)
      */
-    private INDArray calculateGradient(INDArray trainingFeatures, INDArray trainingScores, INDArray predictedScores,
-                                       int[] queryIds, int[] protectedIdxs,
-                                       Map<String, INDArray> dataPerQueryPredicted) {
-        INDArray gradient = Nd4j.create(trainingFeatures.shape());
-        IntStream.range(0, queryIds.length).forEach((i) -> {
-            //get query
-            int q = queryIds[i];
-            //L2
-            long stepTime = System.currentTimeMillis();
-            if(i % 100 == 0) {
-                LOGGER.info(String.format("Gradient Step 1 computed in %d ms", (System.currentTimeMillis()-stepTime)));
-                stepTime = System.currentTimeMillis();
-            }
-            double l2 = 1.0 / Transforms.exp(dataPerQueryPredicted.get(keyGen(q, predictedScores)))
-                    .sumNumber().doubleValue();
-            if(i % 100 == 0) {
-                LOGGER.info(String.format("Gradient Step 2 computed in %d ms", (System.currentTimeMillis()-stepTime)));
-                stepTime = System.currentTimeMillis();
-            }
-
-            //L3
-            INDArray res = this.dataPerQuery.get(keyGen(q, trainingFeatures)).transpose()
-                    .mmul(Transforms.exp(dataPerQueryPredicted.get(keyGen(q, predictedScores))))
-                    .mul(l2);
-            if(i % 100 == 0) {
-                LOGGER.info(String.format("Gradient Step 3 computed in %d ms", (System.currentTimeMillis()-stepTime)));
-                stepTime = System.currentTimeMillis();
-            }
-            //L1
-            INDArray t1 = this.dataPerQuery.get(keyGen(q, trainingFeatures)).transpose();
-            INDArray t2 = topp(this.dataPerQuery.get(keyGen(q, trainingScores)));
-            INDArray t3 = t1.mmul(t2);
-            res = res.sub(t3);
-
-            //L deriv
-            res = res.div(Math.log(predictedScores.length()));
-            if(i % 100 == 0) {
-                LOGGER.info(String.format("Gradient Step 4 computed in %d ms", (System.currentTimeMillis()-stepTime)));
-                stepTime = System.currentTimeMillis();
-            }
-            if(!this.noExposure) {
-                res = res.add(normalizedToppProtDerivPerGroupDiff(trainingFeatures, predictedScores, queryIds, q, protectedIdxs)
-                        .mul(this.gamma)
-                        .mul(2)
-                        .mul(exposureDiff(predictedScores, queryIds, q, protectedIdxs)).transpose());
-            }
-            if(i % 100 == 0) {
-                LOGGER.info(String.format("Gradient Step 5 computed in %d ms", (System.currentTimeMillis()-stepTime)));
-            }
-            gradient.putRow(i, res);
-        });
-
-        return gradient;
+    LossFunction lossFunction(TrainerData trainerData, Standardization standardization) {
+        if(this.backend == TrainerBackend.JAVA) {
+            return new PrimitiveLoss(trainerData.queryIds(), trainerData.protectedElementFeature(),
+                    trainerData.features(), trainerData.numberOfFeatures(), standardization,
+                    trainerData.trainingScores(), this.gamma, this.pool);
+        }
+        checkNd4j();
+        return new Nd4jLoss(QueryData.of(trainerData, standardization));
     }
 
     /**
-     * calculates the difference of the normalized topp_prot derivative of the protected and non-protected groups
+     * ND4J is an optional dependency, only the ND4J backend needs it
      */
-    private INDArray normalizedToppProtDerivPerGroupDiff(INDArray trainingScores, INDArray predictedScores,
-                                                       int[] queryIds, int q, int[] protectedIdxs) {
-        String key = keyGen(q, queryIds, protectedIdxs, trainingScores, predictedScores);
-        if(!this.normalizedToppProtDerivPerGroupDiffCache.containsKey(key)) {
-            ItemGroup trainGroup = findItemsPerGroupPerQuery(trainingScores, queryIds, q, protectedIdxs);
-            ItemGroup predictionsGroup = findItemsPerGroupPerQuery(predictedScores, queryIds, q, protectedIdxs);
-
-            INDArray u2 = normalizedToppProtDerivPerGroup(trainGroup.getNonprotectedItemsPerQuery(),
-                    trainGroup.getJudgementsPerQuery(),
-                    predictionsGroup.getNonprotectedItemsPerQuery(),
-                    predictionsGroup.getJudgementsPerQuery());
-            INDArray u3 = normalizedToppProtDerivPerGroup(trainGroup.getProtectedItemsPerQuery(),
-                    trainGroup.getJudgementsPerQuery(),
-                    predictionsGroup.getProtectedItemsPerQuery(),
-                    predictionsGroup.getJudgementsPerQuery());
-
-            this.normalizedToppProtDerivPerGroupDiffCache.put(key, u2.sub(u3));
+    private static void checkNd4j() {
+        try {
+            Class.forName("org.nd4j.linalg.factory.Nd4j", false, Trainer.class.getClassLoader());
+        } catch(ClassNotFoundException e) {
+            throw new IllegalStateException("ND4J is not on the classpath, train with the JAVA backend!", e);
         }
-//
-        return this.normalizedToppProtDerivPerGroupDiffCache.get(key);
     }
 
     /**
-     * normalizes the results of the derivative of topp prot
+     * Sets the criteria that stop the training before all its iterations are done
+     * @param earlyStopping     The criteria, null (the default) to always do all iterations
      */
-    private INDArray normalizedToppProtDerivPerGroup(INDArray groupFeatures, INDArray allFeatures,
-                                                     INDArray groupPredictions, INDArray allPredictions) {
-        INDArray derivative = toppProtFirstDerivative(groupFeatures, allFeatures, groupPredictions, allPredictions);
+    public void setEarlyStopping(EarlyStopping earlyStopping) {
+        this.earlyStopping = earlyStopping;
+    }
 
-        return derivative.div(Math.log(2)).sum(0).div(groupPredictions.length());
+    /**
+     * Returns why the last finished training stopped
+     * @return      The reason, or null if no training has finished yet
+     */
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * Sets the seed for the initialization of the weights, so that trainings on the same data are reproducible
+     * @param seed      The seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
     }
 
     /**
-     * Derivative for topp prot in pieces
+     * Trains with mini-batch gradient descent: every step uses only `batchSize` queries. The queries are shuffled at
+     * the start of every epoch and split into consecutive batches, and the gradient of a batch is scaled to the size
+     * of the whole training set. The cost in the log of a step is then the cost of its batch.
+     * @param batchSize     The number of queries per step, 0 (the default) to use all queries in every step
      */
-    private INDArray toppProtFirstDerivative(INDArray groupFeatures, INDArray allFeatures,
-                                             INDArray groupPredictions, INDArray allPredictions) {
-        INDArray numerator1 = Transforms.exp(groupPredictions).transpose().mmul(groupFeatures);
-        double numerator2 = Transforms.exp(allPredictions).sumNumber().doubleValue();
-        double numerator3 = Transforms.exp(allPredictions)
-                .transpose()
-                .mmul(allFeatures)
-                .sumNumber().doubleValue();
-        double denominator = Math.pow(Transforms.exp(allPredictions).sumNumber().doubleValue(), 2);
-
-        INDArray t1 = numerator1.mul(numerator2);
-        INDArray t2 = Transforms.exp(groupPredictions).mul(numerator3);
-
-        INDArray results = Nd4j.create(groupFeatures.shape());
-
-//        IntStream.range(0, results.rows()).forEach((i) -> {
-//        });
-        for(int i=0; i<results.rows(); i++) {
-            results.putRow(i, t1.sub(t2.getFloat(i,0)).div(denominator));
+    public void setBatchSize(int batchSize) {
+        if(batchSize < 0) {
+            throw new IllegalArgumentException(String.format("Invalid batch size %d!", batchSize));
         }
-//        results = results.div(denominator);
+        this.batchSize = batchSize;
+    }
 
-        return results;
+    /**
+     * Computes the cost and the gradient of the queries in parallel: the queries are split into one chunk per
+     * thread of the pool and the results of the chunks are summed in a fixed order, so trainings with pools of
+     * the same parallelism give the same weights
+     * @param pool      The pool, null (the default) to compute all queries on the thread of the training
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
     }
 
-    private TrainStep calculateCost(INDArray trainingScores, INDArray predictedScores, int[] queryIds,
-                                    int[] protectedIdxs, Map<String, INDArray> dataPerQueryPredicted) {
-        //the cost has to be of the same shape as the predicted/training scores
-        INDArray cost = Nd4j.create(predictedScores.shape());
+    /**
+     * Sets how the weights are updated from the gradient in every iteration
+     * @param optimizer     The optimizer (plain gradient descent by default)
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
 
-        IntStream.range(0, queryIds.length).forEach((i) -> {
-            INDArray loss = calculateLoss(queryIds[i], trainingScores, predictedScores,
-                    queryIds, protectedIdxs, dataPerQueryPredicted);
-            cost.putRow(i, loss);
-        });
+    /**
+     * Sets how the learning rate changes over the iterations
+     * @param schedule      The schedule (a constant learning rate by default)
+     */
+    public void setSchedule(LearningRateSchedule schedule) {
+        this.schedule = schedule;
+    }
 
-        double lossStandard = cost.sumNumber().doubleValue();
-        double lossExposure = Arrays.stream(queryIds).parallel().mapToDouble(q ->
-                exposureDiff(predictedScores, queryIds, q, protectedIdxs)).sum();
+    /**
+     * Sets the implementation of the math of the training
+     * @param backend   The backend (`ND4J` by default)
+     */
+    public void setBackend(TrainerBackend backend) {
+        this.backend = backend;
+    }
 
-        return new TrainStep(System.currentTimeMillis(), cost, lossStandard, lossExposure);
+    /**
+     * initializes the weights uniformly in [0, initVar)
+     */
+    private double[] initOmega(int numberOfFeatures) {
+        if(this.seed == null && this.backend == TrainerBackend.ND4J) {
+            return Nd4j.rand(numberOfFeatures, 1).mul(this.initVar).data().asDouble();
+        }
+
+        //a dedicated generator, the one of ND4J is shared by all trainings on the same thread
+        Random random = this.seed == null ? new Random() : new Random(this.seed);
+        double[] omega = new double[numberOfFeatures];
+        for(int i=0; i<numberOfFeatures; i++) {
+            omega[i] = random.nextDouble() * this.initVar;
+        }
+        return omega;
     }
 
     /**
-     * Calculate loss for a given query
+     * calculates the cost of query `q` from its top one probabilities and the predictions of its documents
      */
-    private INDArray calculateLoss(int whichQuery, INDArray trainingScores, INDArray predictedScores,
-                                   int[] queryIds, int[] protectedIdxs,
-                                   Map<String, INDArray> dataPerQueryPredicted) {
-        INDArray result = topp(this.dataPerQuery.get(keyGen(whichQuery, trainingScores))).transpose()
-                .mmul(Transforms.log(topp(dataPerQueryPredicted.get(keyGen(whichQuery, predictedScores)))))
-                .div(Math.log(predictedScores.length()))
-                .mul(-1);
+    private double calculateLoss(QueryData data, int q, INDArray predictedScores, TopOneProbabilities topOne,
+                                 double exposureDiff) {
+        //log(topp(prediction)) = prediction - logSumExp
+        INDArray logTopp = predictedScores.sub(topOne.logSumExp());
+        double result = -data.toppTrainingScoresPerQuery[q].transpose().mmul(logTopp).getDouble(0)
+                / data.logNumberOfRows;
 
         if(!this.noExposure) {
-            result = result.add(Math.pow(exposureDiff(predictedScores, queryIds, whichQuery, protectedIdxs), 2) * this.gamma);
+            result += Math.pow(exposureDiff, 2) * this.gamma;
         }
 
         return result;
     }
 
     /**
-     * computes the exposure difference between protected and non-protected groups
-     * @param data              predictions
-     * @param queryIds          list of query IDs
-     * @param whichQuery        given query ID
-     * @param protectedIdxs     list states which item is protected or non-protected
-     * @return
+     * adds the gradient of query `q` to `gradient`, from its top one probabilities
      */
-    private double exposureDiff(INDArray data, int[] queryIds, int whichQuery, int[] protectedIdxs) {
-        String key = keyGen(whichQuery, queryIds, protectedIdxs, data);
-        if(!this.exposureDiffCache.containsKey(key)) {
-            ItemGroup itemGroup = findItemsPerGroupPerQuery(data, queryIds, whichQuery, protectedIdxs);
-
-            double exposureProt = normalizedExposure(itemGroup.getProtectedItemsPerQuery(),
-                    itemGroup.getJudgementsPerQuery());
-            double exposureNProt = normalizedExposure(itemGroup.getNonprotectedItemsPerQuery(),
-                    itemGroup.getJudgementsPerQuery());
+    private void addGradient(INDArray gradient, QueryData data, int q, TopOneProbabilities topOne,
+                             double exposureDiff) {
+        INDArray featuresPerQuery = data.featuresPerQuery[q];
+        int numberOfItems = data.index.size(q);
+        int numberOfNonprotected = data.index.protectedStart(q) - data.index.start(q);
+
+        double[] exps = new double[numberOfItems];
+        for(int i=0; i<numberOfItems; i++) {
+            exps[i] = topOne.exp(i);
+        }
 
-            this.exposureDiffCache.put(key, Math.max(0, (exposureNProt - exposureProt)));
+        //L3
+        INDArray res = featuresPerQuery.transpose().mmul(Nd4j.create(exps, new int[]{numberOfItems, 1}))
+                .div(topOne.sum());
+
+        //L1
+        res = res.sub(featuresPerQuery.transpose().mmul(data.toppTrainingScoresPerQuery[q]));
+
+        //L deriv
+        res = res.div(data.logNumberOfRows);
+
+        //the exposure term vanishes when there is no exposure difference (then both groups have documents)
+        if(!this.noExposure && exposureDiff != 0) {
+            double[] nonprotectedWeightedFeatures = data.nonprotectedFeaturesPerQuery[q].transpose()
+                    .mmul(Nd4j.create(Arrays.copyOfRange(exps, 0, numberOfNonprotected),
+                            new int[]{numberOfNonprotected, 1}))
+                    .data().asDouble();
+            double[] protectedWeightedFeatures = data.protectedFeaturesPerQuery[q].transpose()
+                    .mmul(Nd4j.create(Arrays.copyOfRange(exps, numberOfNonprotected, numberOfItems),
+                            new int[]{numberOfItems - numberOfNonprotected, 1}))
+                    .data().asDouble();
+            double[] derivative = new double[res.length()];
+            topOne.addExposureDiffDerivative(nonprotectedWeightedFeatures, protectedWeightedFeatures,
+                    this.gamma * 2 * exposureDiff, derivative);
+            res = res.add(Nd4j.create(derivative, new int[]{derivative.length, 1}));
         }
-        return this.exposureDiffCache.get(key);
+
+        //the gradient of a query is the same for each of its documents
+        gradient.addi(res.mul(numberOfItems));
     }
 
     /**
-     * calculates the exposure of a group in the entire ranking
-     * @param groupData         redictions of relevance scores for one group
-     * @param allData           all predictions
-     * @return
+     * Runs a task on the queries, split into one contiguous chunk per thread of the pool (a single chunk without a
+     * pool). The chunks only depend on the number of queries and the parallelism of the pool, and their results
+     * are returned in their order, so reducing them in that order gives the same result for the same pool size.
+     * @param pool          the pool (or null)
+     * @param queries       the query numbers
+     * @param task          computes the result of the chunk from position `from` to position `to` (excluded)
+     * @return              the result of every chunk
      */
-    private double normalizedExposure(INDArray groupData, INDArray allData) {
-        return toppProt(groupData, allData).div(Math.log(2)).sumNumber().doubleValue() / groupData.length();
+    static <T> List<T> inChunks(ForkJoinPool pool, int[] queries, BiFunction<Integer, Integer, T> task) {
+        int numberOfChunks = pool == null ? 1 : Math.min(pool.getParallelism(), queries.length);
+        if(numberOfChunks <= 1) {
+            return Collections.singletonList(task.apply(0, queries.length));
+        }
+
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(numberOfChunks);
+        for(int c=0; c<numberOfChunks; c++) {
+            int from = (int) ((long) queries.length * c / numberOfChunks);
+            int to = (int) ((long) queries.length * (c + 1) / numberOfChunks);
+            tasks.add(pool.submit(() -> task.apply(from, to)));
+        }
+
+        List<T> results = new ArrayList<>(numberOfChunks);
+        for(ForkJoinTask<T> chunk : tasks) {
+            results.add(chunk.join());
+        }
+        return results;
     }
 
-    /**
-     * given a dataset of features what is the probability of being at the top position
-     * for one group (group_items) out of all items
-     * example: what is the probability of each female (or male respectively) item (group_items) to be in position 1
-     * @param groupData     vector of predicted scores of one group (protected or non-protected)
-     * @param allData       vector of predicted scores of all items
-     * @return
-     */
-    private INDArray toppProt(INDArray groupData, INDArray allData) {
-        return Transforms.exp(groupData).div(Transforms.exp(allData).sumNumber());
+    public List<TrainStep> getLog() {
+        return log;
     }
 
+    /**
+     * The loss of the `ND4J` backend
+     */
+    private class Nd4jLoss implements LossFunction {
+        private final QueryData data;
 
-    private ItemGroup findItemsPerGroupPerQuery(INDArray data, int[] queryIds, int whichQuery,
-                                               int[] protectedIdxs) {
-        String key = keyGen(whichQuery, queryIds, protectedIdxs, data);
-        if(!this.itemsPerGroupPerQueryCache.containsKey(key)) {
-            INDArray judgementsPerQuery = findItemsPerQuery(data, queryIds, whichQuery);
+        private Nd4jLoss(QueryData data) {
+            this.data = data;
+        }
 
-            List<Integer> protectedElements = new ArrayList<>();
-            List<Integer> nonprotectedElements = new ArrayList<>();
+        @Override
+        public int[] allQueries() {
+            return this.data.allQueries;
+        }
 
-            int j=0;
-            for(int i=0; i<protectedIdxs.length; i++) {
-                if(queryIds[i] == whichQuery) {
-                    if(protectedIdxs[i] == 0) {
-                        nonprotectedElements.add(j);
-                    } else {
-                        protectedElements.add(j);
+        @Override
+        public TrainStep evaluate(double[] omega, int[] queries, double[] gradient) {
+            INDArray weights = Nd4j.create(omega, new int[]{omega.length, 1});
+
+            //the cost has one row per query, every chunk fills its own rows and sums its own gradient
+            double[] costs = new double[queries.length];
+            List<Nd4jChunk> chunks = inChunks(pool, queries, (from, to) -> {
+                Nd4jChunk chunk = new Nd4jChunk(gradient == null ? null : Nd4j.zeros(omega.length, 1));
+                TopOneProbabilities topOne = new TopOneProbabilities();
+                for(int i=from; i<to; i++) {
+                    int q = queries[i];
+                    int numberOfItems = this.data.index.size(q);
+
+                    //calculate the scores of the documents of the query only, a step costs its batch
+                    INDArray predictedScores = this.data.featuresPerQuery[q].mmul(weights);
+                    double[] predictions = predictedScores.data().asDouble();
+
+                    //the top one probabilities are computed once and used by the cost, the exposure and the gradient
+                    topOne.compute(predictions, 0, this.data.index.protectedStart(q) - this.data.index.start(q),
+                            numberOfItems);
+                    double exposureDiff = topOne.exposureDiff();
+
+                    costs[i] = calculateLoss(this.data, q, predictedScores, topOne, exposureDiff) * numberOfItems;
+                    chunk.lossExposure += exposureDiff * numberOfItems;
+                    if(chunk.gradient != null) {
+                        addGradient(chunk.gradient, this.data, q, topOne, exposureDiff);
                     }
-                    j++;
                 }
+                return chunk;
+            });
 
+            //sum the chunks in a fixed order
+            INDArray sum = gradient == null ? null : chunks.get(0).gradient;
+            double lossExposure = 0;
+            for(int c=0; c<chunks.size(); c++) {
+                lossExposure += chunks.get(c).lossExposure;
+                if(sum != null && c > 0) {
+                    sum.addi(chunks.get(c).gradient);
+                }
+            }
+            if(gradient != null) {
+                System.arraycopy(sum.data().asDouble(), 0, gradient, 0, omega.length);
             }
 
-            INDArray protectedItemsPerQuery = judgementsPerQuery.getRows(ArrayUtil.toArray(protectedElements));
-            INDArray nonprotectedItemsPerQuery = judgementsPerQuery.getRows(ArrayUtil.toArray(nonprotectedElements));
-
-            this.itemsPerGroupPerQueryCache.put(key,
-                    new ItemGroup(judgementsPerQuery, protectedItemsPerQuery, nonprotectedItemsPerQuery));
+            INDArray cost = Nd4j.create(costs, new int[]{queries.length, 1});
+            return new TrainStep(System.currentTimeMillis(), cost, cost.sumNumber().doubleValue(), lossExposure);
         }
-
-        return this.itemsPerGroupPerQueryCache.get(key);
-    }
-
-    private INDArray findItemsPerQuery(INDArray data, int[] queryIds, int whichQuery) {
-        String key = keyGen(whichQuery, queryIds, data);
-        if(!this.itemsPerQueryCache.containsKey(key))
-            this.itemsPerQueryCache.put(key,
-                 data.getRows(IntStream.range(0, queryIds.length).filter((x) -> queryIds[x] == whichQuery).toArray()));
-
-        return this.itemsPerQueryCache.get(key);
     }
 
-    private static String keyGen(INDArray data) {
-        return String.format("%d", data.hashCode());
-    }
-
-    private static String keyGen(int q, INDArray data) {
-        return String.format("%d-%d", q, data.hashCode());
-    }
-
-    private static String keyGen(int q, int[] qs, INDArray data) {
-        return String.format("%d-%d-%d", q, qs.hashCode(), data.hashCode());
-    }
-
-    private static String keyGen(int q, int[] qs, int[] ps, INDArray data) {
-        return String.format("%d-%d-%d-%d", q, qs.hashCode(), ps.hashCode(), data.hashCode());
-    }
-    private static String keyGen(int q, int[] qs, int[] ps, INDArray data, INDArray data2) {
-        return String.format("%d-%d-%d-%d-%d", q, qs.hashCode(), ps.hashCode(), data.hashCode(), data2.hashCode());
-    }
+    /**
+     * The gradient and the exposure loss of the queries of one chunk
+     */
+    private static class Nd4jChunk {
+        private final INDArray gradient; // null if only the cost is computed
+        private double lossExposure = 0;
 
-    public List<TrainStep> getLog() {
-        return log;
+        private Nd4jChunk(INDArray gradient) {
+            this.gradient = gradient;
+        }
     }
 
     /**
-     * computes the probability of a document being
-     * in the first position of the ranking
-     * @param data  all training judgments or all predictions
-     * @return      float value which is a probability
+     * The training data of one training, with its rows in the grouped layout of the query index and views
+     * on the rows of every query (indexed by query number)
      */
-    private static INDArray topp(INDArray data) {
-        String key = keyGen(data);
-        if(!Trainer.toppCache.containsKey(key)) {
-            INDArray t1 = Transforms.exp(data);
-            t1 = t1.div(t1.sumNumber());
-            Trainer.toppCache.put(key, t1);
+    static class QueryData {
+        private final QueryIndex index;
+        final int[] allQueries;
+        final INDArray features;
+        private final double logNumberOfRows; // the cost of every query is divided by it
+        private final INDArray[] featuresPerQuery;
+        private final INDArray[] protectedFeaturesPerQuery;
+        private final INDArray[] nonprotectedFeaturesPerQuery;
+        private final INDArray[] toppTrainingScoresPerQuery;
+
+        QueryData(int[] queryIds, int[] protectedElementFeature, INDArray featureMatrix,
+                  INDArray trainingScores) {
+            this(new QueryIndex(queryIds, protectedElementFeature), featureMatrix, trainingScores);
+        }
+
+        private QueryData(QueryIndex index, INDArray featureMatrix, INDArray trainingScores) {
+            this(index, featureMatrix.getRows(index.order()), trainingScores.getRows(index.order()).data().asDouble());
+        }
+
+        /**
+         * @param index         the layout of the training set
+         * @param features      the features in the grouped layout
+         * @param scores        the judgements in the grouped layout
+         */
+        private QueryData(QueryIndex index, INDArray features, double[] scores) {
+            this.index = index;
+
+            this.features = features;
+            this.logNumberOfRows = Math.log(this.index.numberOfRows());
+            TopOneProbabilities topOne = new TopOneProbabilities();
+
+            int numberOfQueries = this.index.numberOfQueries();
+            this.allQueries = new int[numberOfQueries];
+            this.featuresPerQuery = new INDArray[numberOfQueries];
+            this.protectedFeaturesPerQuery = new INDArray[numberOfQueries];
+            this.nonprotectedFeaturesPerQuery = new INDArray[numberOfQueries];
+            this.toppTrainingScoresPerQuery = new INDArray[numberOfQueries];
+            for(int q=0; q<numberOfQueries; q++) {
+                this.allQueries[q] = q;
+                this.featuresPerQuery[q] = itemsPerQuery(this.features, q);
+                this.protectedFeaturesPerQuery[q] = protectedItemsPerQuery(this.features, q);
+                this.nonprotectedFeaturesPerQuery[q] = nonprotectedItemsPerQuery(this.features, q);
+                //the training scores do not change, so their top one probabilities are computed only once
+                topOne.compute(scores, this.index.start(q), this.index.protectedStart(q), this.index.end(q));
+                double[] topp = new double[this.index.size(q)];
+                for(int i=0; i<topp.length; i++) {
+                    topp[i] = topOne.probability(i);
+                }
+                this.toppTrainingScoresPerQuery[q] = Nd4j.create(topp, new int[]{topp.length, 1});
+            }
         }
-        return Trainer.toppCache.get(key);
-    }
 
-    private static class ItemGroup {
-        private INDArray judgementsPerQuery;
-        private INDArray protectedItemsPerQuery;
-        private INDArray nonprotectedItemsPerQuery;
+        /**
+         * Copies a training set in primitive arrays into the grouped layout, standardizing the rows as they are
+         * copied (if the standardization is not null)
+         */
+        static QueryData of(TrainerData trainerData, Standardization standardization) {
+            QueryIndex index = new QueryIndex(trainerData.queryIds(), trainerData.protectedElementFeature());
+            int numberOfRows = index.numberOfRows();
+            int numberOfFeatures = trainerData.numberOfFeatures();
+            int[] protectedElementFeature = trainerData.protectedElementFeature();
+            double[] features = trainerData.features();
+            double[] trainingScores = trainerData.trainingScores();
+
+            int[] order = index.order();
+            double[] grouped = new double[Math.multiplyExact(numberOfRows, numberOfFeatures)];
+            double[] scores = new double[numberOfRows];
+            for(int row=0; row<numberOfRows; row++) {
+                if(standardization == null) {
+                    System.arraycopy(features, order[row] * numberOfFeatures, grouped, row * numberOfFeatures,
+                            numberOfFeatures);
+                } else {
+                    standardization.copy(features, order[row] * numberOfFeatures, protectedElementFeature[order[row]],
+                            grouped, row * numberOfFeatures);
+                }
+                scores[row] = trainingScores[order[row]];
+            }
+            return new QueryData(index, Nd4j.create(grouped, new int[]{numberOfRows, numberOfFeatures}), scores);
+        }
 
-        private int code;
+        /**
+         * @return      a view on the rows of query `q` of data in the grouped layout
+         */
+        private INDArray itemsPerQuery(INDArray data, int q) {
+            return rows(data, this.index.start(q), this.index.end(q));
+        }
 
-        public ItemGroup(INDArray judgementsPerQuery, INDArray protectedItemsPerQuery, INDArray nonprotectedItemsPerQuery) {
-            this.judgementsPerQuery = judgementsPerQuery;
-            this.protectedItemsPerQuery = protectedItemsPerQuery;
-            this.nonprotectedItemsPerQuery = nonprotectedItemsPerQuery;
+        /**
+         * @return      a view on the protected rows of query `q`, or null if there are none
+         */
+        private INDArray protectedItemsPerQuery(INDArray data, int q) {
+            return rows(data, this.index.protectedStart(q), this.index.end(q));
         }
 
-        public INDArray getJudgementsPerQuery() {
-            return judgementsPerQuery;
+        /**
+         * @return      a view on the non-protected rows of query `q`, or null if there are none
+         */
+        private INDArray nonprotectedItemsPerQuery(INDArray data, int q) {
+            return rows(data, this.index.start(q), this.index.protectedStart(q));
         }
 
-        public INDArray getProtectedItemsPerQuery() {
-            return protectedItemsPerQuery;
+        private static INDArray rows(INDArray data, int from, int to) {
+            if(from == to) {
+                return null;
+            }
+            return data.get(NDArrayIndex.interval(from, to), NDArrayIndex.all());
         }
+    }
 
-        public INDArray getNonprotectedItemsPerQuery() {
-            return nonprotectedItemsPerQuery;
+    /**
+     * Splits the query numbers into batches, shuffling them at the start of every epoch
+     */
+    private static class Batches {
+        private final int[] queries;
+        private final int[] batch;
+        private final Random random;
+        private int next;
+
+        private Batches(int numberOfQueries, int batchSize, Random random) {
+            this.queries = new int[numberOfQueries];
+            for(int q=0; q<numberOfQueries; q++) {
+                this.queries[q] = q;
+            }
+            this.batch = new int[batchSize];
+            this.random = random;
+            this.next = numberOfQueries;
         }
 
-        @Override
-        public int hashCode() {
-            final int prime = 23;
-            int result = 1;
-            result = prime * result + (judgementsPerQuery == null ? 0 : judgementsPerQuery.hashCode());
-            result = prime * result + (protectedItemsPerQuery == null ? 0 : protectedItemsPerQuery.hashCode());
-            result = prime * result + (nonprotectedItemsPerQuery == null ? 0 : nonprotectedItemsPerQuery.hashCode());
+        /**
+         * @return      the query numbers of the next batch (the array is reused by the following batches)
+         */
+        private int[] next() {
+            if(this.next == this.queries.length) {
+                shuffle();
+                this.next = 0;
+            }
+            //the last batch of an epoch can be smaller
+            int size = Math.min(this.batch.length, this.queries.length - this.next);
+            int[] result = size == this.batch.length ? this.batch : new int[size];
+            System.arraycopy(this.queries, this.next, result, 0, size);
+            this.next += size;
             return result;
         }
+
+        private void shuffle() {
+            for(int i=this.queries.length - 1; i>0; i--) {
+                int j = this.random.nextInt(i + 1);
+                int tmp = this.queries[i];
+                this.queries[i] = this.queries[j];
+                this.queries[j] = tmp;
+            }
+        }
     }
 }
-
-
@@ -0,0 +1,20 @@
+package com.github.fairsearch.deltr;
+
+/**
+ * The implementation of the math of the training. Both compute the same loss and gradient, they differ in speed,
+ * precision and dependencies.
+ */
+public enum TrainerBackend {
+
+    /**
+     * ND4J matrices (in float precision), one operation on the rows of a query at a time
+     */
+    ND4J,
+
+    /**
+     * Plain Java loops over arrays of doubles that compute the top one probabilities, the exposure and the gradient
+     * of a query in a single pass over its rows. It does not use ND4J, so it has no native code to load and no
+     * per-operation overhead, which dominates the small per-query operations.
+     */
+    JAVA
+}
@@ -0,0 +1,78 @@
+package com.github.fairsearch.deltr.lucene;
+
+import com.github.fairsearch.deltr.Deltr;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.DoubleValues;
+import org.apache.lucene.search.DoubleValuesSource;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Rescorer;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reranks the hits of a first pass query with a trained DELTR model. The features of the hits are read segment by
+ * segment, in the order of the documents, into one block (see `DocValuesFeatureProvider`) that is scored at once
+ * (see `Deltr.scoreBatch`), and only the top N are sorted.
+ * Like Lucene's `QueryRescorer`, the `ScoreDoc`s of the first pass are reused: their score is replaced by the DELTR
+ * score. The first pass score of a hit is available to the features that need scores.
+ */
+public class DeltrRescorer extends Rescorer {
+
+    private final DeltrValuesSource source;
+
+    /**
+     * @param source    The scores of the model, computed from the features of the documents
+     */
+    public DeltrRescorer(DeltrValuesSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Reads the features of the model from the doc values fields with their names (see
+     * `DeltrValuesSource.fromDoubleFields`)
+     * @param deltr     The trained model, it needs a schema
+     */
+    public DeltrRescorer(Deltr deltr) {
+        this(DeltrValuesSource.fromDoubleFields(deltr));
+    }
+
+    @Override
+    public TopDocs rescore(IndexSearcher searcher, TopDocs firstPassTopDocs, int topN) throws IOException {
+        ScoreDoc[] hits = firstPassTopDocs.scoreDocs;
+        int numberOfHits = hits.length;
+        double[] features = DocValuesFeatureProvider.readFeatures(searcher, hits, this.source.getFeatures());
+
+        double[] scores = new double[numberOfHits];
+        int[] order = new int[numberOfHits];
+        int k = Math.min(topN, numberOfHits);
+        this.source.getDeltr().scoreBatch(features, new int[]{0, numberOfHits}, scores, order, k);
+
+        ScoreDoc[] topDocs = new ScoreDoc[k];
+        for(int i=0; i<k; i++) {
+            topDocs[i] = hits[order[i]];
+            topDocs[i].score = (float) scores[order[i]];
+        }
+        return new TopDocs(firstPassTopDocs.totalHits, topDocs, k == 0 ? Float.NaN : topDocs[0].score);
+    }
+
+    @Override
+    public Explanation explain(IndexSearcher searcher, Explanation firstPassExplanation, int docID)
+            throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docID, leaves));
+        DoubleValues scores = DoubleValuesSource.constant(firstPassExplanation.getValue()).getValues(leaf, null);
+        Explanation explanation = this.source.explain(this.source.featureValues(leaf, scores).read(
+                docID - leaf.docBase));
+
+        Explanation[] details = Arrays.copyOf(explanation.getDetails(), explanation.getDetails().length + 1);
+        details[details.length - 1] = Explanation.match(firstPassExplanation.getValue(), "first pass score",
+                firstPassExplanation);
+        return Explanation.match(explanation.getValue(), explanation.getDescription(), details);
+    }
+}
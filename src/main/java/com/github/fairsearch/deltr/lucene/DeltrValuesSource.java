@@ -0,0 +1,151 @@
+package com.github.fairsearch.deltr.lucene;
+
+import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DoubleValues;
+import org.apache.lucene.search.DoubleValuesSource;
+import org.apache.lucene.search.Explanation;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The scores of a trained DELTR model, computed from the features of the documents of an index. The features are
+ * read from one `DoubleValuesSource` each, for example from doc values (see `fromDoubleFields`), so the scores can
+ * be used to sort the hits of a query or to rescore them (see `DeltrRescorer`). A feature a document has no value
+ * for is 0.
+ */
+public class DeltrValuesSource extends DoubleValuesSource {
+
+    private final Deltr deltr;
+    private final List<DoubleValuesSource> features;
+
+    /**
+     * @param deltr         The trained model
+     * @param features      The source of each feature, in the order of the schema of the model (see `getSchema`)
+     */
+    public DeltrValuesSource(Deltr deltr, List<DoubleValuesSource> features) {
+        //check if the model is created
+        if(deltr.getOmega() == null) {
+            throw new NullPointerException("You need to train a model first!");
+        }
+        if(features.size() != deltr.getOmega().length) {
+            throw new InvalidParameterException(String.format("The model has %d features, %d sources were given!",
+                    deltr.getOmega().length, features.size()));
+        }
+        this.deltr = deltr;
+        this.features = Collections.unmodifiableList(new ArrayList<>(features));
+    }
+
+    /**
+     * Reads every feature of the model from the numeric doc values field with the name of the feature, as indexed
+     * by a `DoubleDocValuesField`
+     * @param deltr         The trained model, it needs a schema
+     * @return              The scores of the model
+     */
+    public static DeltrValuesSource fromDoubleFields(Deltr deltr) {
+        FeatureSchema schema = deltr.getSchema();
+        if(schema == null) {
+            throw new InvalidParameterException("The model has no schema, so the names of its features are unknown!");
+        }
+        List<DoubleValuesSource> features = new ArrayList<>(schema.size());
+        for(String name : schema.names()) {
+            features.add(DoubleValuesSource.fromDoubleField(name));
+        }
+        return new DeltrValuesSource(deltr, features);
+    }
+
+    /**
+     * @return      The trained model
+     */
+    public Deltr getDeltr() {
+        return this.deltr;
+    }
+
+    /**
+     * @return      The source of each feature, in the order of the schema of the model
+     */
+    public List<DoubleValuesSource> getFeatures() {
+        return this.features;
+    }
+
+    @Override
+    public DoubleValues getValues(LeafReaderContext ctx, DoubleValues scores) throws IOException {
+        FeatureValues values = featureValues(ctx, scores);
+        return new DoubleValues() {
+            private double score;
+
+            @Override
+            public double doubleValue() {
+                return this.score;
+            }
+
+            @Override
+            public boolean advanceExact(int doc) throws IOException {
+                this.score = deltr.score(values.read(doc));
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param ctx       The segment
+     * @param scores    The scores of the documents, for the features that need them (or null)
+     * @return          The values of the features of the documents of the segment
+     */
+    FeatureValues featureValues(LeafReaderContext ctx, DoubleValues scores) throws IOException {
+        return new FeatureValues(this.features, ctx, scores);
+    }
+
+    @Override
+    public boolean needsScores() {
+        for(DoubleValuesSource feature : this.features) {
+            if(feature.needsScores()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Explanation explain(LeafReaderContext ctx, int docId, Explanation scoreExplanation) throws IOException {
+        DoubleValues scores = DoubleValuesSource.constant(scoreExplanation.getValue()).getValues(ctx, null);
+        return explain(featureValues(ctx, scores).read(docId));
+    }
+
+    /**
+     * @param values    The features of a document
+     * @return          The score of the document, with the value and the weight of each feature
+     */
+    Explanation explain(double[] values) {
+        double[] omega = this.deltr.getOmega();
+        List<Explanation> details = new ArrayList<>(values.length);
+        for(int i=0; i<values.length; i++) {
+            details.add(Explanation.match((float) values[i],
+                    String.format("%s, weight %f", this.features.get(i), omega[i])));
+        }
+        return Explanation.match((float) this.deltr.score(values), "DELTR score of the features:", details);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(o == null || getClass() != o.getClass()) return false;
+        DeltrValuesSource that = (DeltrValuesSource) o;
+        return this.deltr == that.deltr && this.features.equals(that.features);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(this.deltr) + this.features.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "deltr(" + this.features + ")";
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.fairsearch.deltr.lucene;
+
+import com.github.fairsearch.deltr.models.ArrayFeatureProvider;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.DoubleValues;
+import org.apache.lucene.search.DoubleValuesSource;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The features of the hits of a query, read from the index into one block. Document `j` of the provider is
+ * `hits[j]`: the hits keep their order, but their features are read segment by segment in the order of the
+ * documents, which is the order doc values are read fastest in. The first pass score of a hit is available to the
+ * features that need scores, and a feature a hit has no value for is 0.
+ */
+public class DocValuesFeatureProvider extends ArrayFeatureProvider {
+
+    private final ScoreDoc[] hits;
+
+    private DocValuesFeatureProvider(FeatureSchema schema, ScoreDoc[] hits, double[] features) {
+        super(schema, features, 0, hits.length);
+        this.hits = hits;
+    }
+
+    /**
+     * Reads the features of the hits from the doc values fields with the names of the features
+     * @param searcher      The searcher the hits come from
+     * @param hits          The hits of the query
+     * @param schema        The schema of the features
+     * @return              The features of the hits
+     * @throws IOException      if the values cannot be read
+     */
+    public static DocValuesFeatureProvider read(IndexSearcher searcher, ScoreDoc[] hits, FeatureSchema schema)
+            throws IOException {
+        List<DoubleValuesSource> features = new ArrayList<>(schema.size());
+        for(String name : schema.names()) {
+            features.add(DoubleValuesSource.fromDoubleField(name));
+        }
+        return read(searcher, hits, schema, features);
+    }
+
+    /**
+     * Reads the features of the hits
+     * @param searcher      The searcher the hits come from
+     * @param hits          The hits of the query
+     * @param schema        The schema of the features
+     * @param features      The source of each feature, in the order of the schema
+     * @return              The features of the hits
+     * @throws IOException      if the values cannot be read
+     */
+    public static DocValuesFeatureProvider read(IndexSearcher searcher, ScoreDoc[] hits, FeatureSchema schema,
+                                                List<DoubleValuesSource> features) throws IOException {
+        if(features.size() != schema.size()) {
+            throw new InvalidParameterException(String.format("The schema has %d features, %d sources were given!",
+                    schema.size(), features.size()));
+        }
+        return new DocValuesFeatureProvider(schema, hits, readFeatures(searcher, hits, features));
+    }
+
+    /**
+     * Returns the hit of a document
+     * @param doc       The position of the document
+     * @return          The hit, as given to `read`
+     */
+    public ScoreDoc hit(int doc) {
+        return this.hits[doc];
+    }
+
+    /**
+     * Reads the features of the hits into one block, the features of `hits[j]` from position `j * features.size()`
+     */
+    static double[] readFeatures(IndexSearcher searcher, ScoreDoc[] hits, List<DoubleValuesSource> features)
+            throws IOException {
+        int numberOfHits = hits.length;
+        int numberOfFeatures = features.size();
+        double[] values = new double[Math.multiplyExact(numberOfHits, numberOfFeatures)];
+
+        //the positions of the hits sorted by document: the document in the high bits, the position in the low bits
+        long[] byDoc = new long[numberOfHits];
+        for(int j=0; j<numberOfHits; j++) {
+            byDoc[j] = ((long) hits[j].doc << 32) | j;
+        }
+        Arrays.sort(byDoc);
+
+        boolean needsScores = false;
+        for(DoubleValuesSource feature : features) {
+            needsScores |= feature.needsScores();
+        }
+        FirstPassScore firstPassScore = new FirstPassScore();
+
+        //one segment at a time, the hits of a segment are next to each other
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        int i = 0;
+        while(i < numberOfHits) {
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex((int) (byDoc[i] >>> 32), leaves));
+            FeatureValues featureValues = new FeatureValues(features, leaf, needsScores ? firstPassScore : null);
+            int end = leaf.docBase + leaf.reader().maxDoc();
+            for(; i < numberOfHits && (int) (byDoc[i] >>> 32) < end; i++) {
+                ScoreDoc hit = hits[(int) byDoc[i]];
+                firstPassScore.score = hit.score;
+                System.arraycopy(featureValues.read(hit.doc - leaf.docBase), 0, values,
+                        (int) byDoc[i] * numberOfFeatures, numberOfFeatures);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The first pass score of the current hit
+     */
+    private static class FirstPassScore extends DoubleValues {
+        private float score;
+
+        @Override
+        public double doubleValue() {
+            return this.score;
+        }
+
+        @Override
+        public boolean advanceExact(int doc) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.fairsearch.deltr.lucene;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DoubleValues;
+import org.apache.lucene.search.DoubleValuesSource;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The values of the features of the documents of one segment. The features of a document are read into a buffer
+ * that is reused for the next document.
+ */
+final class FeatureValues {
+
+    private final DoubleValues[] values;
+    private final double[] features;
+
+    /**
+     * @param sources   The source of each feature, in the order of the schema of the model
+     * @param context   The segment
+     * @param scores    The scores of the documents, for the features that need them (or null)
+     * @throws IOException      if the values cannot be read
+     */
+    FeatureValues(List<DoubleValuesSource> sources, LeafReaderContext context, DoubleValues scores)
+            throws IOException {
+        this.values = new DoubleValues[sources.size()];
+        for(int i=0; i<this.values.length; i++) {
+            this.values[i] = sources.get(i).getValues(context, scores);
+        }
+        this.features = new double[this.values.length];
+    }
+
+    /**
+     * Reads the features of a document, a feature the document has no value for is 0
+     * @param doc       The document, relative to the segment
+     * @return          The features of the document (the buffer is reused for the next document)
+     * @throws IOException      if the values cannot be read
+     */
+    double[] read(int doc) throws IOException {
+        for(int i=0; i<this.values.length; i++) {
+            this.features[i] = this.values[i].advanceExact(doc) ? this.values[i].doubleValue() : 0;
+        }
+        return this.features;
+    }
+}
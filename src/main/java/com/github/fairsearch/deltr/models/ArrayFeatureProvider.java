@@ -0,0 +1,70 @@
+package com.github.fairsearch.deltr.models;
+
+import java.security.InvalidParameterException;
+
+/**
+ * The features of documents stored in one array, one document after the other
+ */
+public class ArrayFeatureProvider implements FeatureProvider {
+
+    private final FeatureSchema schema;
+    private final double[] features;
+    private final int offset;
+    private final int numberOfDocuments;
+
+    /**
+     * @param schema                The schema of the features
+     * @param features              The features of each document, one document after the other (the array is not
+     *                              copied)
+     * @param offset                The position of the first feature of the first document in `features`
+     * @param numberOfDocuments     The number of documents
+     */
+    public ArrayFeatureProvider(FeatureSchema schema, double[] features, int offset, int numberOfDocuments) {
+        if(offset < 0 || numberOfDocuments < 0
+                || offset + (long) numberOfDocuments * schema.size() > features.length) {
+            throw new InvalidParameterException(String.format("%d documents of %d features from position %d do " +
+                    "not fit in %d values!", numberOfDocuments, schema.size(), offset, features.length));
+        }
+        this.schema = schema;
+        this.features = features;
+        this.offset = offset;
+        this.numberOfDocuments = numberOfDocuments;
+    }
+
+    @Override
+    public FeatureSchema schema() {
+        return this.schema;
+    }
+
+    @Override
+    public int numberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+
+    @Override
+    public double feature(int doc, int feature) {
+        return this.features[offset(doc) + feature];
+    }
+
+    @Override
+    public void copyFeatures(int doc, double[] target, int offset) {
+        System.arraycopy(this.features, offset(doc), target, offset, this.schema.size());
+    }
+
+    /**
+     * Returns the array that backs the features (changes to it change the documents)
+     * @return      The features of each document, one document after the other from `offset(0)`
+     */
+    public double[] features() {
+        return this.features;
+    }
+
+    /**
+     * Returns the position of the first feature of a document in `features()`
+     * @param doc       The position of the document
+     * @return          The position of its first feature
+     */
+    public int offset(int doc) {
+        return this.offset + doc * this.schema.size();
+    }
+}
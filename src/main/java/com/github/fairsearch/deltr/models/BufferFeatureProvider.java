@@ -0,0 +1,55 @@
+package com.github.fairsearch.deltr.models;
+
+import java.nio.DoubleBuffer;
+import java.security.InvalidParameterException;
+
+/**
+ * The features of documents stored in a buffer, one document after the other, e.g. in a file mapped into memory or
+ * in memory outside of the heap. The features are read with absolute `get`s, so the buffer can be shared.
+ */
+public class BufferFeatureProvider implements FeatureProvider {
+
+    private final FeatureSchema schema;
+    private final DoubleBuffer features;
+    private final int numberOfDocuments;
+
+    /**
+     * @param schema        The schema of the features
+     * @param features      The features of each document, one document after the other from the position of the
+     *                      buffer to its limit (the buffer is not copied)
+     */
+    public BufferFeatureProvider(FeatureSchema schema, DoubleBuffer features) {
+        int numberOfFeatures = schema.size();
+        if(numberOfFeatures == 0 ? features.hasRemaining() : features.remaining() % numberOfFeatures != 0) {
+            throw new InvalidParameterException(String.format("%d values are not documents of %d features!",
+                    features.remaining(), numberOfFeatures));
+        }
+        this.schema = schema;
+        this.features = features.slice();
+        this.numberOfDocuments = numberOfFeatures == 0 ? 0 : features.remaining() / numberOfFeatures;
+    }
+
+    @Override
+    public FeatureSchema schema() {
+        return this.schema;
+    }
+
+    @Override
+    public int numberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+
+    @Override
+    public double feature(int doc, int feature) {
+        return this.features.get(doc * this.schema.size() + feature);
+    }
+
+    @Override
+    public void copyFeatures(int doc, double[] target, int offset) {
+        int numberOfFeatures = this.schema.size();
+        int start = doc * numberOfFeatures;
+        for(int i=0; i<numberOfFeatures; i++) {
+            target[offset + i] = this.features.get(start + i);
+        }
+    }
+}
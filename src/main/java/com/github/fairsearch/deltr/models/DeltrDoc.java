@@ -49,6 +49,18 @@ public interface DeltrDoc {
      */
     List<Double> features();
 
+    /**
+     * Copies the values of the features of the document to `target`, starting at position `offset`
+     * @param target    The array to copy the values to
+     * @param offset    The position in `target` of the first feature
+     */
+    default void copyFeatures(double[] target, int offset) {
+        List<Double> features = features();
+        for(int i=0; i<features.size(); i++) {
+            target[offset + i] = features.get(i);
+        }
+    }
+
     /**
      * Returns the assignFeature at position `index`
      * @param index     The position of the feature to return
@@ -88,4 +100,12 @@ public interface DeltrDoc {
      * @return              The position of of the protected feature in the feature list
      */
     int protectedFeatureIndex();
+
+    /**
+     * Returns the schema of the features of the document
+     * @return              The feature names and the protected feature of the document
+     */
+    default FeatureSchema schema() {
+        return new FeatureSchema(keys(), protectedFeatureName());
+    }
 }
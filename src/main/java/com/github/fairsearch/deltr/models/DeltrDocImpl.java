@@ -75,6 +75,13 @@ public class DeltrDocImpl extends ScoreDoc implements DeltrDoc {
         return new ArrayList<Double>(this.features.values());
     }
 
+    @Override
+    public void copyFeatures(double[] target, int offset) {
+        for(double value : this.features.values()) {
+            target[offset++] = value;
+        }
+    }
+
     @Override
     public Double feature(int index) {
         return Iterables.get(this.features.values(), index);
@@ -97,15 +104,8 @@ public class DeltrDocImpl extends ScoreDoc implements DeltrDoc {
 
     @Override
     public int protectedFeatureIndex() {
-        int index = 0;
-        while(this.features.keySet().iterator().hasNext()){
-            String name = this.features.keySet().iterator().next();
-            if(name.equals(protectedFeatureName())) {
-                break;
-            }
-            index++;
-        }
-        return index;
+        //the features are sorted by name, so the index is the number of features before the protected one
+        return this.features.headMap(protectedFeatureName()).size();
     }
 
     @Override
@@ -24,6 +24,15 @@ public interface DeltrTopDocs {
      */
     void reorder();
 
+    /**
+     * Re-sort only the `k` documents with the highest scores to the top of the list. The rest of the documents follow
+     * them in no particular order.
+     * @param k         The number of documents to sort
+     */
+    default void reorder(int k) {
+        reorder();
+    }
+
     /**
      * Put the sorted list of documents in the object
      * @param docs      The new array of sorted DeltrDoc instances
@@ -36,4 +45,12 @@ public interface DeltrTopDocs {
      * @return          The document instance
      */
     DeltrDoc doc(int index);
+
+    /**
+     * Returns the schema of the features shared by all the documents in the ranking
+     * @return          The schema, or null if the ranking is empty
+     */
+    default FeatureSchema schema() {
+        return size() == 0 ? null : doc(0).schema();
+    }
 }
@@ -11,10 +11,22 @@ import java.util.stream.IntStream;
 public class DeltrTopDocsImpl extends TopDocs implements DeltrTopDocs {
 
     private int questionId;
+    private FeatureSchema schema;
 
     public DeltrTopDocsImpl(int questionId) {
         super(0, new ScoreDoc[0], 0);
+        this.questionId = questionId;
+    }
+
+    /**
+     * @param questionId    The ID of the query
+     * @param schema        The schema of the features shared by all the documents that will be put in the ranking
+     */
+    public DeltrTopDocsImpl(int questionId, FeatureSchema schema) {
+        this(questionId);
+        this.schema = schema;
     }
+
     public DeltrTopDocsImpl(int questionId, long totalHits, ScoreDoc[] scoreDocs, float maxScore) {
         super(totalHits, scoreDocs, maxScore);
         this.questionId = questionId;
@@ -31,6 +43,24 @@ public class DeltrTopDocsImpl extends TopDocs implements DeltrTopDocs {
         });
     }
 
+    @Override
+    public void reorder(int k) {
+        int size = this.scoreDocs.length;
+        double[] scores = new double[size];
+        for(int i=0; i<size; i++) {
+            scores[i] = this.scoreDocs[i].score;
+        }
+
+        int[] order = new int[size];
+        ScoredRanking.sort(scores, order, size, k);
+
+        ScoreDoc[] reordered = new ScoreDoc[size];
+        for(int i=0; i<size; i++) {
+            reordered[i] = this.scoreDocs[order[i]];
+        }
+        this.scoreDocs = reordered;
+    }
+
     @Override
     public int id() {
         return this.questionId;
@@ -46,11 +76,19 @@ public class DeltrTopDocsImpl extends TopDocs implements DeltrTopDocs {
         return (DeltrDoc) this.scoreDocs[index];
     }
 
+    @Override
+    public FeatureSchema schema() {
+        if(this.schema != null) {
+            return this.schema;
+        }
+        return DeltrTopDocs.super.schema();
+    }
+
     @Override
     public void put(DeltrDoc[] docs) {
         this.scoreDocs = new ScoreDoc[docs.length];
         IntStream.range(0, docs.length).forEach((i) -> {
-            this.scoreDocs[i] = (DeltrDocImpl) docs[i];
+            this.scoreDocs[i] = (ScoreDoc) docs[i];
         });
     }
 }
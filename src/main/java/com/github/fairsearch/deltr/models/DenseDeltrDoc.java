@@ -0,0 +1,150 @@
+package com.github.fairsearch.deltr.models;
+
+import com.google.common.primitives.Doubles;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.security.InvalidParameterException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A document that stores its features in a primitive array, in the order given by a shared `FeatureSchema`.
+ * Reading a feature by position is O(1) and does not allocate.
+ */
+public class DenseDeltrDoc extends ScoreDoc implements DeltrDoc {
+
+    private final FeatureSchema schema;
+    private final double[] features;
+    private boolean isProtected;
+
+    public DenseDeltrDoc(int doc, float score, FeatureSchema schema) {
+        this(doc, score, schema, new double[schema.size()]);
+    }
+
+    /**
+     * @param doc           The ID of the document
+     * @param score         The judgement of the document
+     * @param schema        The schema of the features
+     * @param features      The values of the features, in the order of the schema (the array is not copied)
+     */
+    public DenseDeltrDoc(int doc, float score, FeatureSchema schema, double[] features) {
+        super(doc, score);
+        if(features.length != schema.size()) {
+            throw new InvalidParameterException(String.format("Expected %d features, got %d!",
+                    schema.size(), features.length));
+        }
+        this.schema = schema;
+        this.features = features;
+        this.isProtected = features[schema.protectedFeatureIndex()] != 0;
+    }
+
+    @Override
+    public FeatureSchema schema() {
+        return this.schema;
+    }
+
+    /**
+     * Returns the value of the feature at position `index` without boxing it
+     * @param index     The position of the feature
+     * @return          The value of the feature
+     */
+    public double value(int index) {
+        return this.features[index];
+    }
+
+    /**
+     * Returns the array that backs the features of the document (changes to it change the document)
+     * @return      The values of the features, in the order of the schema
+     */
+    public double[] values() {
+        return this.features;
+    }
+
+    @Override
+    public void put(String name, Double value) {
+        this.features[indexOf(name)] = value;
+    }
+
+    @Override
+    public void put(String name, Boolean isProtected) {
+        if(!name.equals(this.schema.protectedFeatureName())) {
+            throw new InvalidParameterException(String.format("'%s' is not the protected feature!", name));
+        }
+        this.features[this.schema.protectedFeatureIndex()] = isProtected ? 1.0 : 0.0;
+        this.isProtected = isProtected;
+    }
+
+    @Override
+    public int id() {
+        return this.doc;
+    }
+
+    @Override
+    public double judgement() {
+        return this.score;
+    }
+
+    @Override
+    public void rejudge(double judgment) {
+        this.score = (float)judgment;
+    }
+
+    @Override
+    public int size() {
+        return this.features.length;
+    }
+
+    @Override
+    public List<String> keys() {
+        return this.schema.names();
+    }
+
+    @Override
+    public List<Double> features() {
+        return Collections.unmodifiableList(Doubles.asList(this.features));
+    }
+
+    @Override
+    public void copyFeatures(double[] target, int offset) {
+        System.arraycopy(this.features, 0, target, offset, this.features.length);
+    }
+
+    @Override
+    public Double feature(int index) {
+        return this.features[index];
+    }
+
+    @Override
+    public Double feature(String name) {
+        int index = this.schema.index(name);
+        return index < 0 ? null : this.features[index];
+    }
+
+    @Override
+    public boolean isProtected() {
+        return this.isProtected;
+    }
+
+    @Override
+    public String protectedFeatureName() {
+        return this.schema.protectedFeatureName();
+    }
+
+    @Override
+    public int protectedFeatureIndex() {
+        return this.schema.protectedFeatureIndex();
+    }
+
+    private int indexOf(String name) {
+        int index = this.schema.index(name);
+        if(index < 0) {
+            throw new InvalidParameterException(String.format("Feature '%s' is not in the schema!", name));
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("id:%d, judgement:%f, isProtected:%b", id(), judgement(), isProtected());
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.fairsearch.deltr.models;
+
+import java.nio.DoubleBuffer;
+import java.security.InvalidParameterException;
+
+/**
+ * Columnar access to the features of a set of candidate documents: the value of feature `f` of document `doc` is
+ * `feature(doc, f)`, with the features in the order of the schema. Candidates can be scored and used for training
+ * through a provider without creating a `DeltrDoc` per document, straight from arrays, buffers or an index.
+ */
+public interface FeatureProvider {
+
+    /**
+     * Returns the schema of the features
+     * @return      The schema shared by all documents
+     */
+    FeatureSchema schema();
+
+    /**
+     * Returns the number of documents
+     * @return      The number of documents
+     */
+    int numberOfDocuments();
+
+    /**
+     * Returns the value of a feature of a document
+     * @param doc           The position of the document, from 0 to `numberOfDocuments() - 1`
+     * @param feature       The position of the feature in the schema
+     * @return              The value of the feature
+     */
+    double feature(int doc, int feature);
+
+    /**
+     * Copies the features of a document to an array, in the order of the schema
+     * @param doc           The position of the document
+     * @param target        The array that receives the features
+     * @param offset        The position of the first feature in `target`
+     */
+    default void copyFeatures(int doc, double[] target, int offset) {
+        int numberOfFeatures = schema().size();
+        for(int i=0; i<numberOfFeatures; i++) {
+            target[offset + i] = feature(doc, i);
+        }
+    }
+
+    /**
+     * @param schema        The schema of the features
+     * @param features      The features of each document, one document after the other (the array is not copied)
+     * @return              The features of the documents
+     */
+    static ArrayFeatureProvider of(FeatureSchema schema, double[] features) {
+        int numberOfFeatures = schema.size();
+        if(numberOfFeatures == 0 ? features.length != 0 : features.length % numberOfFeatures != 0) {
+            throw new InvalidParameterException(String.format("%d values are not documents of %d features!",
+                    features.length, numberOfFeatures));
+        }
+        return new ArrayFeatureProvider(schema, features, 0,
+                numberOfFeatures == 0 ? 0 : features.length / numberOfFeatures);
+    }
+
+    /**
+     * @param schema        The schema of the features
+     * @param features      The features of each document, one document after the other from the position of the
+     *                      buffer to its limit (the buffer is not copied)
+     * @return              The features of the documents
+     */
+    static BufferFeatureProvider of(FeatureSchema schema, DoubleBuffer features) {
+        return new BufferFeatureProvider(schema, features);
+    }
+}
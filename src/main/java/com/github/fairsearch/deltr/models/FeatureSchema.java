@@ -0,0 +1,120 @@
+package com.github.fairsearch.deltr.models;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable description of the features of the documents: their names, the position of each feature in the
+ * feature list and which of them is the protected feature. A single instance is meant to be shared by all the
+ * documents that have the same features.
+ */
+public final class FeatureSchema {
+
+    private final List<String> names;
+    private final Map<String, Integer> indexes;
+    private final int protectedFeatureIndex;
+
+    /**
+     * @param names                     The names of the features, in the order of the feature list
+     * @param protectedFeatureName      The name of the feature that indicates if a document is protected
+     */
+    public FeatureSchema(List<String> names, String protectedFeatureName) {
+        this.names = Collections.unmodifiableList(Arrays.asList(names.toArray(new String[0])));
+        this.indexes = new HashMap<>();
+        for(int i=0; i<this.names.size(); i++) {
+            if(this.indexes.put(this.names.get(i), i) != null) {
+                throw new InvalidParameterException(String.format("Feature '%s' is defined twice!", this.names.get(i)));
+            }
+        }
+
+        Integer index = this.indexes.get(protectedFeatureName);
+        if(index == null) {
+            throw new InvalidParameterException(String.format("Protected feature '%s' is not one of the features!",
+                    protectedFeatureName));
+        }
+        this.protectedFeatureIndex = index;
+    }
+
+    /**
+     * @param protectedFeatureName      The name of the feature that indicates if a document is protected
+     * @param names                     The names of the features, in the order of the feature list
+     */
+    public FeatureSchema(String protectedFeatureName, String... names) {
+        this(Arrays.asList(names), protectedFeatureName);
+    }
+
+    /**
+     * Returns the number of features
+     * @return      The length of the feature list
+     */
+    public int size() {
+        return this.names.size();
+    }
+
+    /**
+     * Returns the names of the features
+     * @return      An unmodifiable list of the feature names
+     */
+    public List<String> names() {
+        return this.names;
+    }
+
+    /**
+     * Returns the name of the feature at position `index`
+     * @param index     The position of the feature
+     * @return          The name of the feature
+     */
+    public String name(int index) {
+        return this.names.get(index);
+    }
+
+    /**
+     * Returns the position of the feature with the name `name`
+     * @param name      The name of the feature
+     * @return          The position of the feature in the feature list, or -1 if there is no such feature
+     */
+    public int index(String name) {
+        Integer index = this.indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the name of the feature that indicates if a document is protected
+     * @return          The name of the protected feature
+     */
+    public String protectedFeatureName() {
+        return this.names.get(this.protectedFeatureIndex);
+    }
+
+    /**
+     * Returns the position of the feature that indicates if a document is protected
+     * @return          The position of the protected feature in the feature list
+     */
+    public int protectedFeatureIndex() {
+        return this.protectedFeatureIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof FeatureSchema))
+            return false;
+        FeatureSchema that = (FeatureSchema) o;
+        return this.protectedFeatureIndex == that.protectedFeatureIndex && this.names.equals(that.names);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.names.hashCode() + this.protectedFeatureIndex;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("features:%s, protected:%s", this.names, protectedFeatureName());
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.fairsearch.deltr.models;
+
+import java.security.InvalidParameterException;
+
+/**
+ * The mean and the variance of each feature, updated one row at a time with Welford's method. The rows are not kept,
+ * so the statistics of a training set are computed in a single pass over its features, and they stay accurate when
+ * the features are large compared to their spread.
+ */
+public final class FeatureStatistics {
+
+    private final double[] means;
+    private final double[] squaredDeviations; // sum of the squared deviations from the mean of each feature
+    private long count = 0;
+
+    /**
+     * @param numberOfFeatures      The number of features of each row
+     */
+    public FeatureStatistics(int numberOfFeatures) {
+        this.means = new double[numberOfFeatures];
+        this.squaredDeviations = new double[numberOfFeatures];
+    }
+
+    /**
+     * Computes the statistics of the features of all rows
+     * @param features              The features of each row, one row after the other
+     * @param numberOfFeatures      The number of features of each row
+     * @return                      The statistics
+     */
+    public static FeatureStatistics of(double[] features, int numberOfFeatures) {
+        if(numberOfFeatures == 0 ? features.length != 0 : features.length % numberOfFeatures != 0) {
+            throw new InvalidParameterException(String.format("%d values are not rows of %d features!",
+                    features.length, numberOfFeatures));
+        }
+        FeatureStatistics statistics = new FeatureStatistics(numberOfFeatures);
+        for(int offset=0; offset<features.length; offset+=numberOfFeatures) {
+            statistics.add(features, offset);
+        }
+        return statistics;
+    }
+
+    /**
+     * Adds a row
+     * @param features      The features of rows, one row after the other
+     * @param offset        The position of the first feature of the row in `features`
+     */
+    public void add(double[] features, int offset) {
+        this.count++;
+        for(int i=0; i<this.means.length; i++) {
+            double value = features[offset + i];
+            double delta = value - this.means[i];
+            this.means[i] += delta / this.count;
+            this.squaredDeviations[i] += delta * (value - this.means[i]);
+        }
+    }
+
+    /**
+     * Returns the number of rows
+     * @return      The number of rows added
+     */
+    public long count() {
+        return this.count;
+    }
+
+    /**
+     * Returns the mean of each feature
+     * @return      A copy of the means
+     */
+    public double[] means() {
+        return this.means.clone();
+    }
+
+    /**
+     * Returns the sample variance of each feature
+     * @return      The variances, 0 if there are less than two rows
+     */
+    public double[] variances() {
+        double[] variances = new double[this.means.length];
+        if(this.count > 1) {
+            for(int i=0; i<variances.length; i++) {
+                variances[i] = this.squaredDeviations[i] / (this.count - 1);
+            }
+        }
+        return variances;
+    }
+
+    /**
+     * Returns the sample standard deviation of each feature
+     * @return      The standard deviations, 0 if there are less than two rows
+     */
+    public double[] standardDeviations() {
+        double[] deviations = variances();
+        for(int i=0; i<deviations.length; i++) {
+            deviations[i] = Math.sqrt(deviations[i]);
+        }
+        return deviations;
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.fairsearch.deltr.models;
+
+/**
+ * The result of scoring a ranking with DELTR without changing the documents: the score of each document (in the
+ * order of the documents in the ranking) and the ordering of the documents by descending score.
+ */
+public class ScoredRanking {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final double[] scores;
+    private final int[] order;
+
+    /**
+     * @param scores    The score of each document, in the order of the documents in the ranking
+     * @param order     The positions of the documents in the ranking, sorted by descending score
+     */
+    public ScoredRanking(double[] scores, int[] order) {
+        this.scores = scores;
+        this.order = order;
+    }
+
+    /**
+     * Returns the number of documents in the ranking
+     * @return      The length of the ranking
+     */
+    public int size() {
+        return this.order.length;
+    }
+
+    /**
+     * Returns the scores of the documents
+     * @return      The score of each document, in the order of the documents in the ranking
+     */
+    public double[] scores() {
+        return this.scores;
+    }
+
+    /**
+     * Returns the ordering of the documents
+     * @return      The positions of the documents in the ranking, sorted by descending score
+     */
+    public int[] order() {
+        return this.order;
+    }
+
+    /**
+     * Returns the position in the ranking of the document ranked at `rank`
+     * @param rank      The rank (0 is the top)
+     * @return          The position of the document in the ranking
+     */
+    public int index(int rank) {
+        return this.order[rank];
+    }
+
+    /**
+     * Returns the score of the document ranked at `rank`
+     * @param rank      The rank (0 is the top)
+     * @return          The score of the document
+     */
+    public double score(int rank) {
+        return this.scores[this.order[rank]];
+    }
+
+    /**
+     * Fills `order` with the positions 0 to `size` - 1 sorted by descending score. Documents with the same score
+     * keep their relative order. Nothing is allocated.
+     * @param scores    The score of each document
+     * @param order     The array to fill with the ordering (at least `size` long)
+     * @param size      The number of documents
+     */
+    public static void sort(double[] scores, int[] order, int size) {
+        for(int i=0; i<size; i++) {
+            order[i] = i;
+        }
+        quickSort(scores, order, 0, size - 1);
+    }
+
+    /**
+     * Fills `order` so that its first `k` elements are the positions of the `k` documents with the highest scores,
+     * sorted by descending score (ties keep their relative order). They are followed by the positions of the other
+     * documents in ascending order, which are not sorted. Selecting the top uses a bounded heap, so this takes
+     * O(size * log(k)) instead of O(size * log(size)). Nothing is allocated.
+     * @param scores    The score of each document
+     * @param order     The array to fill with the ordering (at least `size` long)
+     * @param size      The number of documents
+     * @param k         The number of top documents to sort
+     */
+    public static void sort(double[] scores, int[] order, int size, int k) {
+        sort(scores, order, 0, size, k);
+    }
+
+    /**
+     * Sorts the documents from position `from` to position `to` (excluded) like `sort(scores, order, size, k)`,
+     * e.g. the documents of one query in a batch of queries. `order` is only filled in the same positions, with
+     * the positions of the documents (from `from` to `to` - 1).
+     * @param scores    The score of each document
+     * @param order     The array to fill with the ordering (at least `to` long)
+     * @param from      The position of the first document
+     * @param to        The position after the last document
+     * @param k         The number of top documents to sort
+     */
+    public static void sort(double[] scores, int[] order, int from, int to, int k) {
+        int size = to - from;
+        if(k >= size || k <= 0) {
+            for(int i=from; i<to; i++) {
+                order[i] = i;
+            }
+            if(k > 0) {
+                quickSort(scores, order, from, to - 1);
+            }
+            return;
+        }
+
+        //keep the best k documents in a heap whose root is the worst of them
+        for(int i=0; i<k; i++) {
+            order[from + i] = from + i;
+        }
+        for(int i=(k >>> 1) - 1; i>=0; i--) {
+            siftDown(scores, order, from, i, k);
+        }
+        for(int i=from + k; i<to; i++) {
+            if(compare(scores, i, order[from]) < 0) {
+                order[from] = i;
+                siftDown(scores, order, from, 0, k);
+            }
+        }
+
+        //a document is in the top if it is not ranked after the worst of the top
+        int last = order[from];
+        int next = from + k;
+        for(int i=from; i<to; i++) {
+            if(compare(scores, i, last) > 0) {
+                order[next++] = i;
+            }
+        }
+
+        quickSort(scores, order, from, from + k - 1);
+    }
+
+    /**
+     * restores the heap in order[base, base + size) below `base + i`, the parents being ranked after their children
+     */
+    private static void siftDown(double[] scores, int[] order, int base, int i, int size) {
+        int current = order[base + i];
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size)
+                break;
+            if(child + 1 < size && compare(scores, order[base + child + 1], order[base + child]) > 0)
+                child++;
+            if(compare(scores, order[base + child], current) <= 0)
+                break;
+            order[base + i] = order[base + child];
+            i = child;
+        }
+        order[base + i] = current;
+    }
+
+    private static void quickSort(double[] scores, int[] order, int from, int to) {
+        while(to - from >= INSERTION_SORT_THRESHOLD) {
+            //median of three as the pivot, placed at `to`
+            int middle = (from + to) >>> 1;
+            if(compare(scores, order[middle], order[from]) < 0)
+                swap(order, middle, from);
+            if(compare(scores, order[to], order[from]) < 0)
+                swap(order, to, from);
+            if(compare(scores, order[middle], order[to]) < 0)
+                swap(order, middle, to);
+            int pivot = order[to];
+
+            int store = from;
+            for(int i=from; i<to; i++) {
+                if(compare(scores, order[i], pivot) < 0) {
+                    swap(order, i, store++);
+                }
+            }
+            swap(order, store, to);
+
+            //recurse into the smaller part, so the depth of the recursion stays logarithmic
+            if(store - from < to - store) {
+                quickSort(scores, order, from, store - 1);
+                from = store + 1;
+            } else {
+                quickSort(scores, order, store + 1, to);
+                to = store - 1;
+            }
+        }
+
+        for(int i=from + 1; i<=to; i++) {
+            int current = order[i];
+            int j = i - 1;
+            while(j >= from && compare(scores, current, order[j]) < 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    /**
+     * @return      a negative number if document `a` is ranked before document `b`
+     */
+    static int compare(double[] scores, int a, int b) {
+        int result = Double.compare(scores[b], scores[a]);
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+
+    private static void swap(int[] order, int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+    }
+}
@@ -1,16 +1,22 @@
 package com.github.fairsearch.deltr.models;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
+/**
+ * One iteration of a training. The weights, the cost of each query and the gradient are kept as arrays of doubles,
+ * the getters that return them as (column vector) ND4J arrays create those arrays on every call.
+ */
 public class TrainStep {
 
     private long timestamp;
-    private INDArray omega;
-    private INDArray cost;
-    private INDArray grad;
+    private double[] omega;
+    private double[] cost;
+    private double[] grad;
     private double lossStandard;
     private double lossExposure;
     private double totalCost;
+    private double validationCost = Double.NaN;
 
     public double getTotalCost() {
         return totalCost;
@@ -21,6 +27,11 @@ public class TrainStep {
     }
 
     public TrainStep(long timestamp, INDArray omega, INDArray cost, INDArray grad, double lossStandard, double lossExposure) {
+        this(timestamp, values(omega), values(cost), values(grad), lossStandard, lossExposure);
+    }
+
+    public TrainStep(long timestamp, double[] omega, double[] cost, double[] grad, double lossStandard,
+                     double lossExposure) {
         this.timestamp = timestamp;
         this.omega = omega;
         this.cost = cost;
@@ -30,6 +41,10 @@ public class TrainStep {
     }
 
     public TrainStep(long timestamp, INDArray cost, double lossStandard, double lossExposure) {
+        this(timestamp, values(cost), lossStandard, lossExposure);
+    }
+
+    public TrainStep(long timestamp, double[] cost, double lossStandard, double lossExposure) {
         this.timestamp = timestamp;
         this.cost = cost;
         this.lossStandard = lossStandard;
@@ -45,29 +60,69 @@ public class TrainStep {
     }
 
     public INDArray getOmega() {
+        return columnVector(omega);
+    }
+
+    public double[] getOmegaValues() {
         return omega;
     }
 
     public void setOmega(INDArray omega) {
+        this.omega = values(omega);
+    }
+
+    public void setOmega(double[] omega) {
         this.omega = omega;
     }
 
     public INDArray getCost() {
+        return columnVector(cost);
+    }
+
+    /**
+     * Returns the cost of each query of the step, weighted by the number of its documents
+     * @return      The costs
+     */
+    public double[] getCostValues() {
         return cost;
     }
 
     public void setCost(INDArray cost) {
+        this.cost = values(cost);
+    }
+
+    public void setCost(double[] cost) {
         this.cost = cost;
     }
 
     public INDArray getGrad() {
+        return columnVector(grad);
+    }
+
+    public double[] getGradValues() {
         return grad;
     }
 
     public void setGrad(INDArray grad) {
+        this.grad = values(grad);
+    }
+
+    public void setGrad(double[] grad) {
         this.grad = grad;
     }
 
+    /**
+     * Returns the cost of the held-out queries with the weights of this step
+     * @return      The cost, or NaN if the training has no held-out queries
+     */
+    public double getValidationCost() {
+        return validationCost;
+    }
+
+    public void setValidationCost(double validationCost) {
+        this.validationCost = validationCost;
+    }
+
     public double getLossStandard() {
         return lossStandard;
     }
@@ -84,6 +139,14 @@ public class TrainStep {
         this.lossExposure = lossExposure;
     }
 
+    private static double[] values(INDArray array) {
+        return array == null ? null : array.dup().data().asDouble();
+    }
+
+    private static INDArray columnVector(double[] values) {
+        return values == null ? null : Nd4j.create(values, new int[]{values.length, 1});
+    }
+
     @Override
     public String toString() {
         return String.format("timestamp:%d, lossStandard:%f, lossExposure:%f ",
@@ -0,0 +1,165 @@
+package com.github.fairsearch.deltr.models;
+
+import java.security.InvalidParameterException;
+import java.util.List;
+
+/**
+ * A training set stored in primitive arrays, one row per document: the query ID of the row, whether the document is
+ * protected, its judgement and its features (row-major, in the order of the schema). Large training sets can be
+ * loaded in this form without creating an object per document.
+ */
+public class TrainerData {
+
+    private final FeatureSchema schema;
+    private final int[] queryIds;
+    private final int[] protectedElementFeature;
+    private final double[] features;
+    private final double[] trainingScores;
+
+    /**
+     * @param schema                    The schema of the features
+     * @param queryIds                  The query ID of each row
+     * @param protectedElementFeature   1 if the document of the row is protected, 0 otherwise
+     * @param features                  The features of each row, one row after the other (the array is not copied)
+     * @param trainingScores            The judgement of each row
+     */
+    public TrainerData(FeatureSchema schema, int[] queryIds, int[] protectedElementFeature, double[] features,
+                       double[] trainingScores) {
+        int numberOfRows = queryIds.length;
+        if(protectedElementFeature.length != numberOfRows || trainingScores.length != numberOfRows
+                || features.length != (long) numberOfRows * schema.size()) {
+            throw new InvalidParameterException(String.format("Expected %d rows of %d features, got %d query ids, " +
+                            "%d protected flags, %d feature values and %d judgements!", numberOfRows, schema.size(),
+                    queryIds.length, protectedElementFeature.length, features.length, trainingScores.length));
+        }
+        this.schema = schema;
+        this.queryIds = queryIds;
+        this.protectedElementFeature = protectedElementFeature;
+        this.features = features;
+        this.trainingScores = trainingScores;
+    }
+
+    /**
+     * Collects the training data of all queries in two passes: the first one checks the queries and counts their
+     * documents, the second one fills arrays that are allocated only once
+     * @param ranks     The queries to train on, all with the same features
+     * @return          The training data, with the rows in the order of the queries and their documents
+     */
+    public static TrainerData create(List<DeltrTopDocs> ranks) {
+        FeatureSchema schema = ranks.get(0).schema();
+        int numberOfFeatures = schema.size();
+
+        //count the rows
+        int numberOfRows = 0;
+        for(DeltrTopDocs docs : ranks) {
+            if(!schema.equals(docs.schema())) {
+                throw new InvalidParameterException(String.format("Query %d has the features (%s) instead of (%s)!",
+                        docs.id(), docs.schema(), schema));
+            }
+            numberOfRows += docs.size();
+        }
+
+        int[] queryIds = new int[numberOfRows];
+        int[] protectedElementFeature = new int[numberOfRows];
+        double[] features = new double[Math.multiplyExact(numberOfRows, numberOfFeatures)];
+        double[] trainingScores = new double[numberOfRows];
+
+        //fill the rows
+        int row = 0;
+        for(DeltrTopDocs docs : ranks) {
+            for(int i=0; i<docs.size(); i++, row++) {
+                DeltrDoc doc = docs.doc(i);
+                if(doc.size() != numberOfFeatures) {
+                    throw new InvalidParameterException(String.format("Document %d of query %d has %d features instead of %d!",
+                            doc.id(), docs.id(), doc.size(), numberOfFeatures));
+                }
+                queryIds[row] = docs.id();
+                protectedElementFeature[row] = doc.isProtected() ? 1 : 0;
+                doc.copyFeatures(features, row * numberOfFeatures);
+                trainingScores[row] = doc.judgement();
+            }
+        }
+
+        return new TrainerData(schema, queryIds, protectedElementFeature, features, trainingScores);
+    }
+
+    /**
+     * Collects the training data of documents read through a feature provider, one row per document. A document is
+     * protected if its protected feature is not 0.
+     * @param docs              The features of the documents
+     * @param queryIds          The query ID of each document, the documents of a query one after the other
+     * @param judgements        The judgement of each document
+     * @return                  The training data, with the rows in the order of the documents
+     */
+    public static TrainerData create(FeatureProvider docs, int[] queryIds, double[] judgements) {
+        FeatureSchema schema = docs.schema();
+        int numberOfFeatures = schema.size();
+        int numberOfRows = docs.numberOfDocuments();
+        if(queryIds.length != numberOfRows || judgements.length != numberOfRows) {
+            throw new InvalidParameterException(String.format("Expected %d rows, got %d query ids and %d judgements!",
+                    numberOfRows, queryIds.length, judgements.length));
+        }
+
+        int protectedFeatureIndex = schema.protectedFeatureIndex();
+        int[] protectedElementFeature = new int[numberOfRows];
+        double[] features = new double[Math.multiplyExact(numberOfRows, numberOfFeatures)];
+        for(int row=0; row<numberOfRows; row++) {
+            docs.copyFeatures(row, features, row * numberOfFeatures);
+            protectedElementFeature[row] = features[row * numberOfFeatures + protectedFeatureIndex] != 0 ? 1 : 0;
+        }
+
+        return new TrainerData(schema, queryIds.clone(), protectedElementFeature, features, judgements.clone());
+    }
+
+    /**
+     * Returns the schema of the features
+     * @return      The schema shared by all rows
+     */
+    public FeatureSchema schema() {
+        return this.schema;
+    }
+
+    /**
+     * Returns the number of rows (documents)
+     * @return      The number of rows
+     */
+    public int size() {
+        return this.queryIds.length;
+    }
+
+    /**
+     * Returns the number of features of each row
+     * @return      The number of features
+     */
+    public int numberOfFeatures() {
+        return this.schema.size();
+    }
+
+    /**
+     * @return      The query ID of each row
+     */
+    public int[] queryIds() {
+        return this.queryIds;
+    }
+
+    /**
+     * @return      1 if the document of the row is protected, 0 otherwise
+     */
+    public int[] protectedElementFeature() {
+        return this.protectedElementFeature;
+    }
+
+    /**
+     * @return      The features of each row, one row after the other
+     */
+    public double[] features() {
+        return this.features;
+    }
+
+    /**
+     * @return      The judgement of each row
+     */
+    public double[] trainingScores() {
+        return this.trainingScores;
+    }
+}
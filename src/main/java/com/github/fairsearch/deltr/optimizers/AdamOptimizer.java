@@ -0,0 +1,85 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.security.InvalidParameterException;
+import java.util.Objects;
+
+/**
+ * Adam (Kingma and Ba, 2015): every weight gets its own step from running averages of the gradient and of its
+ * square, so the learning rate can be much larger than for plain gradient descent
+ */
+public class AdamOptimizer implements Optimizer {
+
+    @JsonProperty("beta1")
+    private final double beta1; // decay of the average of the gradient
+    @JsonProperty("beta2")
+    private final double beta2; // decay of the average of the squared gradient
+    @JsonProperty
+    private final double epsilon; // added to the denominator for numerical stability
+
+    /**
+     * @param beta1     The decay of the average of the gradient, in [0, 1) (0.9 is common)
+     * @param beta2     The decay of the average of the squared gradient, in [0, 1) (0.999 is common)
+     * @param epsilon   The constant added to the denominator for numerical stability (1e-8 is common)
+     */
+    @JsonCreator
+    public AdamOptimizer(@JsonProperty("beta1") double beta1, @JsonProperty("beta2") double beta2,
+                         @JsonProperty("epsilon") double epsilon) {
+        if(beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1) {
+            throw new InvalidParameterException(String.format("Invalid decays %f and %f!", beta1, beta2));
+        }
+        if(epsilon <= 0) {
+            throw new InvalidParameterException(String.format("Invalid epsilon %f!", epsilon));
+        }
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    public AdamOptimizer() {
+        this(0.9, 0.999, 1e-8);
+    }
+
+    @Override
+    public Update start(int numberOfFeatures) {
+        double[] m = new double[numberOfFeatures];
+        double[] v = new double[numberOfFeatures];
+        return new Update() {
+            private double beta1Power = 1;
+            private double beta2Power = 1;
+
+            @Override
+            public void apply(double[] omega, double[] gradient, double learningRate) {
+                beta1Power *= beta1;
+                beta2Power *= beta2;
+                //the averages start at 0, the bias correction is folded into the step
+                double step = learningRate * Math.sqrt(1 - beta2Power) / (1 - beta1Power);
+                for(int i=0; i<omega.length; i++) {
+                    m[i] = beta1 * m[i] + (1 - beta1) * gradient[i];
+                    v[i] = beta2 * v[i] + (1 - beta2) * gradient[i] * gradient[i];
+                    omega[i] -= step * m[i] / (Math.sqrt(v[i]) + epsilon);
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof AdamOptimizer))
+            return false;
+        AdamOptimizer that = (AdamOptimizer) o;
+        return this.beta1 == that.beta1 && this.beta2 == that.beta2 && this.epsilon == that.epsilon;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.beta1, this.beta2, this.epsilon);
+    }
+
+    @Override
+    public String toString() {
+        return "AdamOptimizer{beta1=" + beta1 + ", beta2=" + beta2 + ", epsilon=" + epsilon + '}';
+    }
+}
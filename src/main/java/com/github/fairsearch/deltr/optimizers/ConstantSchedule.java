@@ -0,0 +1,30 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Keeps the same learning rate in all iterations
+ */
+@JsonSerialize
+public class ConstantSchedule implements LearningRateSchedule {
+
+    @Override
+    public double learningRate(double learningRate, int iteration, int numberOfIterations) {
+        return learningRate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConstantSchedule;
+    }
+
+    @Override
+    public int hashCode() {
+        return ConstantSchedule.class.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ConstantSchedule{}";
+    }
+}
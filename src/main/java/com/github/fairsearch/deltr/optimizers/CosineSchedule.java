@@ -0,0 +1,52 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Decreases the learning rate along half a cosine, from the learning rate of the training in the first iteration
+ * to `minLearningRate` after the last one
+ */
+public class CosineSchedule implements LearningRateSchedule {
+
+    @JsonProperty("min_learning_rate")
+    private final double minLearningRate; // learning rate at the end of the training
+
+    /**
+     * @param minLearningRate   The learning rate at the end of the training
+     */
+    @JsonCreator
+    public CosineSchedule(@JsonProperty("min_learning_rate") double minLearningRate) {
+        if(minLearningRate < 0) {
+            throw new InvalidParameterException(String.format("Invalid learning rate %f!", minLearningRate));
+        }
+        this.minLearningRate = minLearningRate;
+    }
+
+    public CosineSchedule() {
+        this(0);
+    }
+
+    @Override
+    public double learningRate(double learningRate, int iteration, int numberOfIterations) {
+        double progress = (double) iteration / numberOfIterations;
+        return this.minLearningRate + (learningRate - this.minLearningRate) * (1 + Math.cos(Math.PI * progress)) / 2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CosineSchedule && ((CosineSchedule) o).minLearningRate == this.minLearningRate;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(this.minLearningRate);
+    }
+
+    @Override
+    public String toString() {
+        return "CosineSchedule{minLearningRate=" + minLearningRate + '}';
+    }
+}
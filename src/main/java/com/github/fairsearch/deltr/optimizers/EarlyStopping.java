@@ -0,0 +1,73 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import java.security.InvalidParameterException;
+
+/**
+ * The criteria that stop a training before all its iterations are done. Each criterion is disabled when it is 0.
+ * The cost criterion compares the cost of consecutive iterations, so with mini-batches it compares different
+ * batches and is best combined with a large tolerance or left disabled.
+ */
+public class EarlyStopping {
+
+    private final double relativeCostChange; // stop when |cost(t) - cost(t-1)| / |cost(t-1)| is below this
+    private final double gradientNorm; // stop when the L2 norm of the gradient is below this
+    private final int patience; // stop when the held-out cost has not improved for this many iterations
+
+    /**
+     * @param relativeCostChange    Stop when the cost changes by less than this fraction between two iterations
+     * @param gradientNorm          Stop when the L2 norm of the gradient is below this
+     * @param patience              Stop when the cost of the held-out queries has not improved for this many
+     *                              iterations, the weights with the best held-out cost are kept
+     */
+    public EarlyStopping(double relativeCostChange, double gradientNorm, int patience) {
+        if(relativeCostChange < 0 || gradientNorm < 0 || patience < 0) {
+            throw new InvalidParameterException(String.format("Invalid early stopping (%f, %f, %d)!",
+                    relativeCostChange, gradientNorm, patience));
+        }
+        this.relativeCostChange = relativeCostChange;
+        this.gradientNorm = gradientNorm;
+        this.patience = patience;
+    }
+
+    public double getRelativeCostChange() {
+        return relativeCostChange;
+    }
+
+    public double getGradientNorm() {
+        return gradientNorm;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    /**
+     * Checks the criteria that only depend on the training queries
+     * @param previousCost      The cost of the previous iteration (NaN in the first one)
+     * @param cost              The cost of this iteration
+     * @param gradient          The gradient of this iteration
+     * @return                  Why the training should stop, or null if it should go on
+     */
+    public StopReason check(double previousCost, double cost, double[] gradient) {
+        if(this.gradientNorm > 0) {
+            double norm = 0;
+            for(double value : gradient) {
+                norm += value * value;
+            }
+            if(Math.sqrt(norm) < this.gradientNorm) {
+                return StopReason.GRADIENT_CONVERGED;
+            }
+        }
+        if(this.relativeCostChange > 0 && !Double.isNaN(previousCost)
+                && Math.abs(cost - previousCost) <= this.relativeCostChange * Math.abs(previousCost)) {
+            return StopReason.COST_CONVERGED;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "EarlyStopping{relativeCostChange=" + relativeCostChange + ", gradientNorm=" + gradientNorm +
+                ", patience=" + patience + '}';
+    }
+}
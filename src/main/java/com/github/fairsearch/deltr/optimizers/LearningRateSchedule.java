@@ -0,0 +1,25 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+/**
+ * Changes the learning rate over the iterations of the training
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = ConstantSchedule.class, name = "constant"),
+        @JsonSubTypes.Type(value = StepSchedule.class, name = "step"),
+        @JsonSubTypes.Type(value = CosineSchedule.class, name = "cosine")
+})
+public interface LearningRateSchedule {
+
+    /**
+     * Returns the learning rate of an iteration
+     * @param learningRate          The learning rate set for the training
+     * @param iteration             The iteration, starting from 0
+     * @param numberOfIterations    The number of iterations of the training
+     * @return                      The learning rate of the iteration
+     */
+    double learningRate(double learningRate, int iteration, int numberOfIterations);
+}
@@ -0,0 +1,57 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Gradient descent with momentum: the weights move along a velocity that accumulates the past gradients,
+ * velocity = momentum * velocity - learningRate * gradient and omega = omega + velocity
+ */
+public class MomentumOptimizer implements Optimizer {
+
+    @JsonProperty
+    private final double momentum; // fraction of the velocity kept in every iteration
+
+    /**
+     * @param momentum      The fraction of the velocity kept in every iteration, in [0, 1) (0.9 is common)
+     */
+    @JsonCreator
+    public MomentumOptimizer(@JsonProperty("momentum") double momentum) {
+        if(momentum < 0 || momentum >= 1) {
+            throw new InvalidParameterException(String.format("Invalid momentum %f!", momentum));
+        }
+        this.momentum = momentum;
+    }
+
+    public MomentumOptimizer() {
+        this(0.9);
+    }
+
+    @Override
+    public Update start(int numberOfFeatures) {
+        double[] velocity = new double[numberOfFeatures];
+        return (omega, gradient, learningRate) -> {
+            for(int i=0; i<omega.length; i++) {
+                velocity[i] = this.momentum * velocity[i] - learningRate * gradient[i];
+                omega[i] += velocity[i];
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MomentumOptimizer && ((MomentumOptimizer) o).momentum == this.momentum;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(this.momentum);
+    }
+
+    @Override
+    public String toString() {
+        return "MomentumOptimizer{momentum=" + momentum + '}';
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+/**
+ * Computes how the weights change in every iteration of the training from the gradient of the cost. An optimizer
+ * only holds its settings, the values it keeps between iterations belong to the `Update` of one training, so the
+ * same optimizer can be used by several trainings at once.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = SgdOptimizer.class, name = "sgd"),
+        @JsonSubTypes.Type(value = MomentumOptimizer.class, name = "momentum"),
+        @JsonSubTypes.Type(value = AdamOptimizer.class, name = "adam")
+})
+public interface Optimizer {
+
+    /**
+     * Starts a training
+     * @param numberOfFeatures      The number of weights
+     * @return                      The update of the weights for this training
+     */
+    Update start(int numberOfFeatures);
+
+    /**
+     * Updates the weights of one training
+     */
+    interface Update {
+
+        /**
+         * Moves the weights against the gradient
+         * @param omega             The weights, changed in place
+         * @param gradient          The gradient of the cost for the weights
+         * @param learningRate      The learning rate of this iteration
+         */
+        void apply(double[] omega, double[] gradient, double learningRate);
+    }
+}
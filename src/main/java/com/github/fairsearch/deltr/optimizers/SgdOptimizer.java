@@ -0,0 +1,34 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Plain gradient descent: omega = omega - learningRate * gradient
+ */
+@JsonSerialize
+public class SgdOptimizer implements Optimizer {
+
+    @Override
+    public Update start(int numberOfFeatures) {
+        return (omega, gradient, learningRate) -> {
+            for(int i=0; i<omega.length; i++) {
+                omega[i] -= learningRate * gradient[i];
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SgdOptimizer;
+    }
+
+    @Override
+    public int hashCode() {
+        return SgdOptimizer.class.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "SgdOptimizer{}";
+    }
+}
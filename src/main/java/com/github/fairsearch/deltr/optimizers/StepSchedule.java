@@ -0,0 +1,57 @@
+package com.github.fairsearch.deltr.optimizers;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.security.InvalidParameterException;
+import java.util.Objects;
+
+/**
+ * Multiplies the learning rate by `factor` every `stepSize` iterations
+ */
+public class StepSchedule implements LearningRateSchedule {
+
+    @JsonProperty("step_size")
+    private final int stepSize; // number of iterations between two decays
+    @JsonProperty
+    private final double factor; // factor of every decay
+
+    /**
+     * @param stepSize      The number of iterations between two decays
+     * @param factor        The factor the learning rate is multiplied by at every decay (e.g. 0.5)
+     */
+    @JsonCreator
+    public StepSchedule(@JsonProperty("step_size") int stepSize, @JsonProperty("factor") double factor) {
+        if(stepSize <= 0) {
+            throw new InvalidParameterException(String.format("Invalid step size %d!", stepSize));
+        }
+        if(factor <= 0) {
+            throw new InvalidParameterException(String.format("Invalid factor %f!", factor));
+        }
+        this.stepSize = stepSize;
+        this.factor = factor;
+    }
+
+    @Override
+    public double learningRate(double learningRate, int iteration, int numberOfIterations) {
+        return learningRate * Math.pow(this.factor, iteration / this.stepSize);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof StepSchedule))
+            return false;
+        StepSchedule that = (StepSchedule) o;
+        return this.stepSize == that.stepSize && this.factor == that.factor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.stepSize, this.factor);
+    }
+
+    @Override
+    public String toString() {
+        return "StepSchedule{stepSize=" + stepSize + ", factor=" + factor + '}';
+    }
+}
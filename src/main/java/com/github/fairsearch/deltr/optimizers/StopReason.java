@@ -0,0 +1,23 @@
+package com.github.fairsearch.deltr.optimizers;
+
+/**
+ * Why a training stopped
+ */
+public enum StopReason {
+    /**
+     * all iterations were done
+     */
+    MAX_ITERATIONS,
+    /**
+     * the relative change of the cost between two iterations fell below the tolerance
+     */
+    COST_CONVERGED,
+    /**
+     * the norm of the gradient fell below the tolerance
+     */
+    GRADIENT_CONVERGED,
+    /**
+     * the cost of the held-out queries did not improve for `patience` iterations
+     */
+    NO_VALIDATION_IMPROVEMENT
+}
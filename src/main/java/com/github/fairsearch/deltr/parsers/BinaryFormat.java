@@ -0,0 +1,212 @@
+package com.github.fairsearch.deltr.parsers;
+
+import com.github.fairsearch.deltr.models.FeatureSchema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts shared by the binary formats of models and training sets: all values are little-endian, the arrays of
+ * doubles start at a multiple of 8 bytes and the schema is stored as the number of features (-1 if there is no
+ * schema), the position of the protected feature and the names of the features (length and UTF-8 bytes).
+ */
+public final class BinaryFormat {
+
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * the largest region mapped at once, a mapped buffer cannot be longer than Integer.MAX_VALUE bytes
+     */
+    static final long MAX_MAPPED_REGION = 1 << 30;
+
+    /**
+     * the bytes read at first to parse a header, enough for the schemas of thousands of features
+     */
+    private static final int HEADER_SIZE = 1 << 16;
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Returns the number of bytes of a schema
+     * @param schema    The schema (or null)
+     * @return          The number of bytes `putSchema` writes
+     */
+    public static int schemaSize(FeatureSchema schema) {
+        int size = 2 * Integer.BYTES;
+        if(schema != null) {
+            for(String name : schema.names()) {
+                size += Integer.BYTES + name.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes a schema at the position of the buffer
+     * @param buffer    The buffer
+     * @param schema    The schema (or null)
+     */
+    public static void putSchema(ByteBuffer buffer, FeatureSchema schema) {
+        if(schema == null) {
+            buffer.putInt(-1).putInt(-1);
+            return;
+        }
+        buffer.putInt(schema.size()).putInt(schema.protectedFeatureIndex());
+        for(String name : schema.names()) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /**
+     * Reads a schema at the position of the buffer
+     * @param buffer    The buffer
+     * @return          The schema, or null if none was written
+     */
+    public static FeatureSchema getSchema(ByteBuffer buffer) {
+        int numberOfFeatures = buffer.getInt();
+        int protectedFeatureIndex = buffer.getInt();
+        if(numberOfFeatures < 0) {
+            return null;
+        }
+        if(protectedFeatureIndex < 0 || protectedFeatureIndex >= numberOfFeatures) {
+            throw new InvalidParameterException(String.format("Invalid protected feature %d!", protectedFeatureIndex));
+        }
+
+        List<String> names = new ArrayList<>(numberOfFeatures);
+        for(int i=0; i<numberOfFeatures; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return new FeatureSchema(names, names.get(protectedFeatureIndex));
+    }
+
+    /**
+     * Rounds a position up to a multiple of 8, where an array of doubles can start
+     * @param position  The position
+     * @return          The aligned position
+     */
+    public static int align(int position) {
+        return (position + Double.BYTES - 1) & -Double.BYTES;
+    }
+
+    /**
+     * Reads the header at the start of a file into memory, without mapping the file: `prefixSize` bytes followed by
+     * a schema. Only the first bytes of the file are read, and more of them if the names of the schema do not fit.
+     * @param channel       The file
+     * @param prefixSize    The number of bytes before the schema
+     * @return              A buffer with the header (or with the whole file if it is too short to hold the header)
+     * @throws IOException      if the file cannot be read
+     */
+    public static ByteBuffer readHeader(FileChannel channel, int prefixSize) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = read(channel, (int) Math.min(fileSize, HEADER_SIZE));
+        while(true) {
+            long end = schemaEnd(header, prefixSize);
+            if(end <= header.limit() || end > Math.min(fileSize, Integer.MAX_VALUE)) {
+                //the whole header, or a file that cannot hold it
+                return header;
+            }
+            header = read(channel, (int) Math.min(Math.min(fileSize, Integer.MAX_VALUE),
+                    Math.max(end, 2L * header.limit())));
+        }
+    }
+
+    /**
+     * the end of the schema after `prefixSize` bytes, or the bytes needed to know it if the header is too short
+     */
+    private static long schemaEnd(ByteBuffer header, int prefixSize) {
+        long end = prefixSize + 2 * Integer.BYTES;
+        if(end > header.limit()) {
+            return end;
+        }
+        int numberOfFeatures = header.getInt(prefixSize);
+        for(int i=0; i<numberOfFeatures; i++) {
+            if(end + Integer.BYTES > header.limit()) {
+                return end + Integer.BYTES;
+            }
+            //a negative length is left to getSchema to reject
+            end += Integer.BYTES + Math.max(0, header.getInt((int) end));
+        }
+        return end;
+    }
+
+    /**
+     * the first `size` bytes of a file, in a buffer of the heap
+     */
+    private static ByteBuffer read(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ORDER);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Maps a read-only region of a file
+     * @param channel   The file
+     * @param position  The start of the region
+     * @param size      The length of the region (at most Integer.MAX_VALUE)
+     * @return          A buffer on the region in the order of the format
+     * @throws IOException      if the file cannot be mapped
+     */
+    public static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ORDER);
+        return buffer;
+    }
+
+    /**
+     * Copies an array of doubles out of a file, mapping it one region at a time
+     * @param channel   The file
+     * @param position  The position of the first double
+     * @param target    The array to fill
+     * @throws IOException      if the file cannot be mapped
+     */
+    public static void readDoubles(FileChannel channel, long position, double[] target) throws IOException {
+        int regionLength = (int) (MAX_MAPPED_REGION / Double.BYTES);
+        for(int i=0; i<target.length; i+=regionLength) {
+            int n = Math.min(target.length - i, regionLength);
+            map(channel, position + (long) i * Double.BYTES, (long) n * Double.BYTES).asDoubleBuffer().get(target, i, n);
+        }
+    }
+
+    /**
+     * Copies an array of ints out of a file, mapping it one region at a time
+     * @param channel   The file
+     * @param position  The position of the first int
+     * @param target    The array to fill
+     * @throws IOException      if the file cannot be mapped
+     */
+    public static void readInts(FileChannel channel, long position, int[] target) throws IOException {
+        int regionLength = (int) (MAX_MAPPED_REGION / Integer.BYTES);
+        for(int i=0; i<target.length; i+=regionLength) {
+            int n = Math.min(target.length - i, regionLength);
+            map(channel, position + (long) i * Integer.BYTES, (long) n * Integer.BYTES).asIntBuffer().get(target, i, n);
+        }
+    }
+
+    /**
+     * Writes the whole content of a buffer to a file
+     * @param channel   The file
+     * @param buffer    The buffer, from its position to its limit
+     * @throws IOException      if the file cannot be written
+     */
+    public static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
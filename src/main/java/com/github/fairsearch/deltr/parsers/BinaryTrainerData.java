@@ -0,0 +1,137 @@
+package com.github.fairsearch.deltr.parsers;
+
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import com.github.fairsearch.deltr.models.TrainerData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes training sets in a compact binary format. After a header with the number of rows and the schema,
+ * every field is stored as one column: the judgements (double), the features (double, one row after the other), the
+ * query IDs (int) and the protected flags (byte). The values are little-endian and the columns of doubles start at a
+ * multiple of 8 bytes (see `BinaryFormat`). A file is read by mapping it into memory and copying every column in bulk
+ * into primitive arrays, nothing is parsed and no object is created per document.
+ */
+public class BinaryTrainerData {
+
+    static final int MAGIC = 0x44545244; // "DTRD"
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private BinaryTrainerData() {
+    }
+
+    /**
+     * Writes a training set to a file, replacing it if it exists
+     * @param data      The training set
+     * @param path      The path of the file
+     * @throws IOException      if the file cannot be written
+     */
+    public static void write(TrainerData data, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            FeatureSchema schema = data.schema();
+            int headerSize = BinaryFormat.align(3 * Integer.BYTES + BinaryFormat.schemaSize(schema));
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(BinaryFormat.ORDER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(data.size());
+            BinaryFormat.putSchema(header, schema);
+            header.position(headerSize);
+            header.flip();
+            BinaryFormat.writeFully(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(BinaryFormat.ORDER);
+            writeDoubles(channel, buffer, data.trainingScores());
+            writeDoubles(channel, buffer, data.features());
+
+            int[] queryIds = data.queryIds();
+            for(int i=0; i<queryIds.length; ) {
+                int n = Math.min(queryIds.length - i, BUFFER_SIZE / Integer.BYTES);
+                buffer.clear();
+                buffer.asIntBuffer().put(queryIds, i, n);
+                buffer.limit(n * Integer.BYTES);
+                BinaryFormat.writeFully(channel, buffer);
+                i += n;
+            }
+            int[] protectedElementFeature = data.protectedElementFeature();
+            for(int i=0; i<protectedElementFeature.length; ) {
+                int n = Math.min(protectedElementFeature.length - i, BUFFER_SIZE);
+                buffer.clear();
+                for(int j=0; j<n; j++) {
+                    buffer.put((byte) protectedElementFeature[i + j]);
+                }
+                buffer.flip();
+                BinaryFormat.writeFully(channel, buffer);
+                i += n;
+            }
+        }
+    }
+
+    /**
+     * Reads a training set from a file by mapping it into memory
+     * @param path      The path of the file
+     * @return          The training set
+     * @throws IOException      if the file cannot be read or is not in this format
+     */
+    public static TrainerData read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //the header is read on its own, only the regions of the data are mapped
+            ByteBuffer header = BinaryFormat.readHeader(channel, 3 * Integer.BYTES);
+            if(header.remaining() < 3 * Integer.BYTES || header.getInt() != MAGIC) {
+                throw new IOException(String.format("'%s' is not a DELTR training set!", path));
+            }
+            int version = header.getInt();
+            if(version != VERSION) {
+                throw new IOException(String.format("Unsupported version %d of '%s'!", version, path));
+            }
+            int numberOfRows = header.getInt();
+            FeatureSchema schema = BinaryFormat.getSchema(header);
+            if(schema == null) {
+                throw new IOException(String.format("'%s' has no schema!", path));
+            }
+            int numberOfFeatures = schema.size();
+
+            long position = BinaryFormat.align(header.position());
+            long end = position + (long) numberOfRows * (Double.BYTES * (1 + numberOfFeatures) + Integer.BYTES + 1);
+            if(channel.size() < end) {
+                throw new IOException(String.format("'%s' is truncated!", path));
+            }
+
+            double[] trainingScores = new double[numberOfRows];
+            BinaryFormat.readDoubles(channel, position, trainingScores);
+            position += (long) numberOfRows * Double.BYTES;
+
+            double[] features = new double[Math.multiplyExact(numberOfRows, numberOfFeatures)];
+            BinaryFormat.readDoubles(channel, position, features);
+            position += (long) features.length * Double.BYTES;
+
+            int[] queryIds = new int[numberOfRows];
+            BinaryFormat.readInts(channel, position, queryIds);
+            position += (long) numberOfRows * Integer.BYTES;
+
+            byte[] flags = new byte[numberOfRows];
+            BinaryFormat.map(channel, position, numberOfRows).get(flags);
+            int[] protectedElementFeature = new int[numberOfRows];
+            for(int i=0; i<numberOfRows; i++) {
+                protectedElementFeature[i] = flags[i];
+            }
+
+            return new TrainerData(schema, queryIds, protectedElementFeature, features, trainingScores);
+        }
+    }
+
+    private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+        for(int i=0; i<values.length; ) {
+            int n = Math.min(values.length - i, BUFFER_SIZE / Double.BYTES);
+            buffer.clear();
+            buffer.asDoubleBuffer().put(values, i, n);
+            buffer.limit(n * Double.BYTES);
+            BinaryFormat.writeFully(channel, buffer);
+            i += n;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.fairsearch.deltr.parsers;
+
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import com.github.fairsearch.deltr.models.TrainerData;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+/**
+ * Reads a training set from a CSV file with a header and one row per document: the query ID, the protected attribute
+ * (0 or 1), the features and the judgement, e.g. `id,gender,score,judgment`. The protected attribute is the first
+ * feature and is named after its column. The rows are parsed straight into primitive arrays, no object is created
+ * per document.
+ */
+public class CsvTrainerDataReader {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private CsvTrainerDataReader() {
+    }
+
+    /**
+     * Reads a training set from a CSV file
+     * @param path      The path of the file
+     * @return          The training set
+     * @throws IOException      if the file cannot be read
+     */
+    public static TrainerData read(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Reads a training set in CSV format
+     * @param reader    The CSV content (it is not closed)
+     * @return          The training set
+     * @throws IOException      if the content cannot be read
+     */
+    public static TrainerData read(Reader reader) throws IOException {
+        BufferedReader br = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+
+        String line = br.readLine();
+        if(line == null) {
+            throw new InvalidParameterException("The CSV has no header!");
+        }
+        String[] header = line.split(",");
+        if(header.length < 3) {
+            throw new InvalidParameterException(String.format("Expected at least 3 columns, got %d!", header.length));
+        }
+        //all columns between the query ID and the judgement are features, starting with the protected attribute
+        FeatureSchema schema = new FeatureSchema(Arrays.asList(header).subList(1, header.length - 1), header[1]);
+        int numberOfFeatures = schema.size();
+
+        int capacity = INITIAL_CAPACITY;
+        int[] queryIds = new int[capacity];
+        int[] protectedElementFeature = new int[capacity];
+        double[] features = new double[capacity * numberOfFeatures];
+        double[] trainingScores = new double[capacity];
+
+        int row = 0;
+        int lineNumber = 1;
+        while((line = br.readLine()) != null) {
+            lineNumber++;
+            if(line.isEmpty()) {
+                continue;
+            }
+            if(row == capacity) {
+                capacity = Math.multiplyExact(capacity, 2);
+                queryIds = Arrays.copyOf(queryIds, capacity);
+                protectedElementFeature = Arrays.copyOf(protectedElementFeature, capacity);
+                features = Arrays.copyOf(features, Math.multiplyExact(capacity, numberOfFeatures));
+                trainingScores = Arrays.copyOf(trainingScores, capacity);
+            }
+
+            //split the line without creating an array of strings
+            int column = 0;
+            int from = 0;
+            int offset = row * numberOfFeatures;
+            while(from <= line.length()) {
+                int to = line.indexOf(',', from);
+                if(to < 0) {
+                    to = line.length();
+                }
+                if(column > numberOfFeatures + 1) {
+                    throw new InvalidParameterException(String.format("Line %d has more than %d columns!",
+                            lineNumber, header.length));
+                }
+                String value = line.substring(from, to).trim();
+                if(column == 0) {
+                    queryIds[row] = Integer.parseInt(value);
+                } else if(column <= numberOfFeatures) {
+                    features[offset + column - 1] = Double.parseDouble(value);
+                } else {
+                    trainingScores[row] = Double.parseDouble(value);
+                }
+                column++;
+                from = to + 1;
+            }
+            if(column != header.length) {
+                throw new InvalidParameterException(String.format("Line %d has %d columns instead of %d!",
+                        lineNumber, column, header.length));
+            }
+            protectedElementFeature[row] = features[offset + schema.protectedFeatureIndex()] != 0 ? 1 : 0;
+            row++;
+        }
+
+        return new TrainerData(schema, Arrays.copyOf(queryIds, row), Arrays.copyOf(protectedElementFeature, row),
+                Arrays.copyOf(features, row * numberOfFeatures), Arrays.copyOf(trainingScores, row));
+    }
+}
@@ -7,8 +7,13 @@ import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import com.github.fairsearch.deltr.optimizers.LearningRateSchedule;
+import com.github.fairsearch.deltr.optimizers.Optimizer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DeltrDeserializer extends JsonDeserializer<Deltr> {
 
@@ -32,6 +37,41 @@ public class DeltrDeserializer extends JsonDeserializer<Deltr> {
             omega[i] = node.get("omega").get(i).asDouble();
         }
 
-        return new Deltr(gamma, numberOfIterations, learningRate, lambda, initVar, shouldStandardize, mu, sigma, omega);
+        //the schema is not known for models serialized without it
+        FeatureSchema schema = null;
+        if(node.hasNonNull("features")) {
+            List<String> names = new ArrayList<>();
+            for(int i=0; i< node.get("features").size(); i++) {
+                names.add(node.get("features").get(i).asText());
+            }
+            schema = new FeatureSchema(names, node.get("protected_feature").asText());
+        }
+
+        //models serialized without per-feature mu and sigma standardize every feature with mu and sigma
+        Deltr deltr;
+        if(node.hasNonNull("feature_mu")) {
+            deltr = new Deltr(gamma, numberOfIterations, learningRate, lambda, initVar, shouldStandardize,
+                    doubles(node.get("feature_mu")), doubles(node.get("feature_sigma")), omega, schema);
+        } else {
+            deltr = new Deltr(gamma, numberOfIterations, learningRate, lambda, initVar, shouldStandardize, mu, sigma,
+                    omega, schema);
+        }
+
+        //models serialized without an optimizer or a schedule use the defaults
+        if(node.hasNonNull("optimizer")) {
+            deltr.setOptimizer(oc.treeToValue(node.get("optimizer"), Optimizer.class));
+        }
+        if(node.hasNonNull("schedule")) {
+            deltr.setSchedule(oc.treeToValue(node.get("schedule"), LearningRateSchedule.class));
+        }
+        return deltr;
+    }
+
+    private static double[] doubles(JsonNode node) {
+        double[] values = new double[node.size()];
+        for(int i=0; i<node.size(); i++) {
+            values[i] = node.get(i).asDouble();
+        }
+        return values;
     }
 }
@@ -0,0 +1,301 @@
+package com.github.fairsearch.deltr.parsers;
+
+import com.github.fairsearch.deltr.models.FeatureProvider;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+/**
+ * The precomputed features of a corpus in a file mapped into memory, keyed by document ID. The features are never
+ * copied to the heap: the candidates of a query are selected by ID (see `select`) and scored through the returned
+ * `FeatureProvider`, so the memory used to rank does not grow with the corpus and the features put no pressure on the
+ * garbage collector. The operating system keeps the pages that are read often in memory.
+ *
+ * After a header with the number of documents and the schema, the file stores the IDs of the documents in ascending
+ * order (int) and then the features of each document in the same order (double, one document after the other). The
+ * values are little-endian and the columns start at a multiple of 8 bytes (see `BinaryFormat`). A file larger than
+ * what a single buffer can map is mapped in several regions, each one holding whole documents.
+ */
+public class MappedFeatureStore implements FeatureProvider {
+
+    static final int MAGIC = 0x44465354; // "DFST"
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FeatureSchema schema;
+    private final int numberOfDocuments;
+    private final IntBuffer[] ids;
+    private final int idsPerRegion;
+    private final DoubleBuffer[] features;
+    private final int documentsPerRegion;
+
+    private MappedFeatureStore(FeatureSchema schema, int numberOfDocuments, IntBuffer[] ids, int idsPerRegion,
+                               DoubleBuffer[] features, int documentsPerRegion) {
+        this.schema = schema;
+        this.numberOfDocuments = numberOfDocuments;
+        this.ids = ids;
+        this.idsPerRegion = idsPerRegion;
+        this.features = features;
+        this.documentsPerRegion = documentsPerRegion;
+    }
+
+    /**
+     * Writes the features of documents to a file, replacing it if it exists
+     * @param docs      The features of the documents
+     * @param ids       The ID of each document, all different
+     * @param path      The path of the file
+     * @throws IOException      if the file cannot be written
+     */
+    public static void write(FeatureProvider docs, int[] ids, Path path) throws IOException {
+        int numberOfDocuments = docs.numberOfDocuments();
+        if(ids.length != numberOfDocuments) {
+            throw new InvalidParameterException(String.format("Expected %d document ids, got %d!",
+                    numberOfDocuments, ids.length));
+        }
+
+        //the positions of the documents sorted by ID: the ID in the high bits, the position in the low bits
+        long[] byId = new long[numberOfDocuments];
+        for(int j=0; j<numberOfDocuments; j++) {
+            byId[j] = ((long) ids[j] << 32) | j;
+        }
+        Arrays.sort(byId);
+        for(int j=1; j<numberOfDocuments; j++) {
+            if((int) (byId[j] >> 32) == (int) (byId[j - 1] >> 32)) {
+                throw new InvalidParameterException(String.format("Document %d is there twice!", byId[j] >> 32));
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            FeatureSchema schema = docs.schema();
+            int headerSize = BinaryFormat.align(3 * Integer.BYTES + BinaryFormat.schemaSize(schema));
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(BinaryFormat.ORDER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(numberOfDocuments);
+            BinaryFormat.putSchema(header, schema);
+            header.position(headerSize);
+            header.flip();
+            BinaryFormat.writeFully(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(BinaryFormat.ORDER);
+            for(int j=0; j<numberOfDocuments; ) {
+                int n = Math.min(numberOfDocuments - j, BUFFER_SIZE / Integer.BYTES);
+                buffer.clear();
+                for(int i=0; i<n; i++) {
+                    buffer.putInt((int) (byId[j + i] >> 32));
+                }
+                if(j + n == numberOfDocuments) {
+                    //the features start at a multiple of 8 bytes
+                    while(buffer.position() % Double.BYTES != 0) {
+                        buffer.put((byte) 0);
+                    }
+                }
+                buffer.flip();
+                BinaryFormat.writeFully(channel, buffer);
+                j += n;
+            }
+
+            int numberOfFeatures = schema.size();
+            double[] row = new double[numberOfFeatures];
+            buffer.clear();
+            for(int j=0; j<numberOfDocuments; j++) {
+                docs.copyFeatures((int) byId[j], row, 0);
+                for(int i=0; i<numberOfFeatures; i++) {
+                    if(!buffer.hasRemaining()) {
+                        buffer.flip();
+                        BinaryFormat.writeFully(channel, buffer);
+                        buffer.clear();
+                    }
+                    buffer.putDouble(row[i]);
+                }
+            }
+            buffer.flip();
+            BinaryFormat.writeFully(channel, buffer);
+        }
+    }
+
+    /**
+     * Maps a feature store into memory
+     * @param path      The path of the file
+     * @return          The feature store
+     * @throws IOException      if the file cannot be read or is not in this format
+     */
+    public static MappedFeatureStore open(Path path) throws IOException {
+        return open(path, BinaryFormat.MAX_MAPPED_REGION);
+    }
+
+    /**
+     * Maps a feature store into memory, in regions of at most `maxRegion` bytes
+     */
+    static MappedFeatureStore open(Path path, long maxRegion) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //the header is read on its own, only the regions of the data are mapped
+            ByteBuffer header = BinaryFormat.readHeader(channel, 3 * Integer.BYTES);
+            if(header.remaining() < 3 * Integer.BYTES || header.getInt() != MAGIC) {
+                throw new IOException(String.format("'%s' is not a DELTR feature store!", path));
+            }
+            int version = header.getInt();
+            if(version != VERSION) {
+                throw new IOException(String.format("Unsupported version %d of '%s'!", version, path));
+            }
+            int numberOfDocuments = header.getInt();
+            FeatureSchema schema = BinaryFormat.getSchema(header);
+            if(schema == null) {
+                throw new IOException(String.format("'%s' has no schema!", path));
+            }
+            if(numberOfDocuments < 0) {
+                throw new IOException(String.format("'%s' is corrupted!", path));
+            }
+            long rowSize = (long) schema.size() * Double.BYTES;
+
+            long idsPosition = BinaryFormat.align(header.position());
+            long featuresPosition = idsPosition + numberOfDocuments * (long) Integer.BYTES
+                    + (numberOfDocuments % 2) * Integer.BYTES; // aligned to 8 bytes
+            if(channel.size() < featuresPosition + numberOfDocuments * rowSize) {
+                throw new IOException(String.format("'%s' is truncated!", path));
+            }
+
+            int idsPerRegion = (int) (maxRegion / Integer.BYTES);
+            IntBuffer[] ids = new IntBuffer[regions(numberOfDocuments, idsPerRegion)];
+            for(int r=0; r<ids.length; r++) {
+                int n = Math.min(numberOfDocuments - r * idsPerRegion, idsPerRegion);
+                ids[r] = BinaryFormat.map(channel, idsPosition + (long) r * idsPerRegion * Integer.BYTES,
+                        (long) n * Integer.BYTES).asIntBuffer();
+            }
+
+            //whole documents in each region
+            int documentsPerRegion = rowSize == 0 ? Integer.MAX_VALUE : (int) Math.max(1, maxRegion / rowSize);
+            DoubleBuffer[] features = new DoubleBuffer[regions(numberOfDocuments, documentsPerRegion)];
+            for(int r=0; r<features.length; r++) {
+                int n = Math.min(numberOfDocuments - r * documentsPerRegion, documentsPerRegion);
+                features[r] = BinaryFormat.map(channel, featuresPosition + r * documentsPerRegion * rowSize,
+                        n * rowSize).asDoubleBuffer();
+            }
+
+            //the mapped regions stay valid once the file is closed
+            return new MappedFeatureStore(schema, numberOfDocuments, ids, idsPerRegion, features,
+                    documentsPerRegion);
+        }
+    }
+
+    private static int regions(int numberOfDocuments, int documentsPerRegion) {
+        return (int) (((long) numberOfDocuments + documentsPerRegion - 1) / documentsPerRegion);
+    }
+
+    @Override
+    public FeatureSchema schema() {
+        return this.schema;
+    }
+
+    /**
+     * Returns the number of documents of the store, the documents are in ascending order of their IDs
+     * @return      The number of documents
+     */
+    @Override
+    public int numberOfDocuments() {
+        return this.numberOfDocuments;
+    }
+
+    @Override
+    public double feature(int doc, int feature) {
+        return this.features[doc / this.documentsPerRegion].get((doc % this.documentsPerRegion) * this.schema.size()
+                + feature);
+    }
+
+    @Override
+    public void copyFeatures(int doc, double[] target, int offset) {
+        DoubleBuffer region = this.features[doc / this.documentsPerRegion];
+        int numberOfFeatures = this.schema.size();
+        int start = (doc % this.documentsPerRegion) * numberOfFeatures;
+        for(int i=0; i<numberOfFeatures; i++) {
+            target[offset + i] = region.get(start + i);
+        }
+    }
+
+    /**
+     * Returns the ID of a document
+     * @param doc       The position of the document in the store
+     * @return          Its ID
+     */
+    public int id(int doc) {
+        return this.ids[doc / this.idsPerRegion].get(doc % this.idsPerRegion);
+    }
+
+    /**
+     * Finds a document by ID
+     * @param id        The ID of the document
+     * @return          The position of the document in the store, or a negative number if it is not in the store
+     */
+    public int indexOf(int id) {
+        int low = 0;
+        int high = this.numberOfDocuments - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = id(middle);
+            if(middleId < id) {
+                low = middle + 1;
+            } else if(middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Selects the candidates of a query. Only their positions are kept, the features are read from the store when
+     * the candidates are scored, e.g. with `Deltr.score(FeatureProvider)`.
+     * @param ids       The IDs of the candidates
+     * @return          The features of the candidates, document `j` being `ids[j]`
+     */
+    public FeatureProvider select(int[] ids) {
+        int[] docs = new int[ids.length];
+        for(int j=0; j<ids.length; j++) {
+            docs[j] = indexOf(ids[j]);
+            if(docs[j] < 0) {
+                throw new InvalidParameterException(String.format("Document %d is not in the store!", ids[j]));
+            }
+        }
+        return new Selection(docs);
+    }
+
+    /**
+     * Some documents of the store
+     */
+    private final class Selection implements FeatureProvider {
+        private final int[] docs;
+
+        private Selection(int[] docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public FeatureSchema schema() {
+            return schema;
+        }
+
+        @Override
+        public int numberOfDocuments() {
+            return this.docs.length;
+        }
+
+        @Override
+        public double feature(int doc, int feature) {
+            return MappedFeatureStore.this.feature(this.docs[doc], feature);
+        }
+
+        @Override
+        public void copyFeatures(int doc, double[] target, int offset) {
+            MappedFeatureStore.this.copyFeatures(this.docs[doc], target, offset);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.fairsearch.deltr;
+
+import com.github.fairsearch.deltr.models.DeltrTopDocs;
+import com.github.fairsearch.deltr.models.FeatureProvider;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import com.github.fairsearch.deltr.models.ScoredRanking;
+import com.github.fairsearch.deltr.models.TrainerData;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnitParamsRunner.class)
+public class CompiledDeltrTests {
+
+    @Test
+    @Parameters({"true", "false"})
+    public void testCompiledScores(boolean shouldStandardize) {
+        List<DeltrTopDocs> queries = new SyntheticDatasetCreator(5, 30, 2, 5, 3).generateDataset();
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, shouldStandardize, 0.3, 1.7,
+                new double[]{1, -2, 0.5e-7, 3, -1.1}, queries.get(0).schema());
+        CompiledDeltr compiled = CompiledDeltr.compile(deltr);
+
+        for(DeltrTopDocs docs : queries) {
+            ScoredRanking expected = deltr.score(docs);
+            double[] scores = new double[docs.size()];
+            int[] order = new int[docs.size()];
+            compiled.score(docs, scores, order, docs.size());
+            for(int j=0; j<docs.size(); j++) {
+                // the same operations on the same constants
+                assert scores[j] == expected.scores()[j];
+                assert order[j] == expected.index(j);
+            }
+
+            compiled.rank(docs);
+            for(int j=0; j<docs.size(); j++) {
+                // the judgements are floats
+                assert docs.doc(j).judgement() == (float) expected.scores()[expected.index(j)];
+            }
+        }
+    }
+
+    @Test
+    @Parameters({"true", "false"})
+    public void testFoldedScores(boolean shouldStandardize) {
+        List<DeltrTopDocs> queries = new SyntheticDatasetCreator(5, 30, 2, 5, 3).generateDataset();
+        TrainerData block = TrainerData.create(queries);
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, shouldStandardize, new double[]{0.2, 0.3, -1, 4, 0.5},
+                new double[]{1, 1.7, 0.5, 2, 3}, new double[]{1, -2, 0.5e-7, 3, -1.1}, block.schema());
+        // the folded model of a loaded model
+        CompiledDeltr folded = CompiledDeltr.fold(Deltr.createFromJson(deltr.toJson()));
+
+        // the same scores as the batch scoring, which folds the standardization too
+        double[] batchScores = new double[block.size()];
+        deltr.scoreBatch(block.features(), new int[]{0, block.size()}, batchScores, null);
+        double[] providerScores = new double[block.size()];
+        folded.score(FeatureProvider.of(block.schema(), block.features()), providerScores, null, 0);
+        assert Arrays.equals(providerScores, batchScores);
+        int row = 0;
+        for(DeltrTopDocs docs : queries) {
+            ScoredRanking expected = deltr.score(docs);
+            double[] scores = new double[docs.size()];
+            int[] order = new int[docs.size()];
+            folded.score(docs, scores, order, docs.size());
+            for(int j=0; j<docs.size(); j++) {
+                // the model folds the standardization the same way
+                assert scores[j] == batchScores[row++];
+                assert scores[j] == expected.scores()[j];
+                assert order[j] == expected.index(j);
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledModelDoesNotChange() {
+        double[] omega = {1, -2};
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, false, 0, 1, omega);
+        CompiledDeltr compiled = CompiledDeltr.compile(deltr);
+        omega[0] = 5;
+        assert compiled.score(new double[]{1, 1}) == -1;
+    }
+
+    @Test
+    @Parameters({"false, 8000", "true, 5000", "true, 4000"})
+    public void testCompiledLargeModel(boolean shouldStandardize, int numberOfFeatures) {
+        // too large to unroll in the 64 KB of code of a method
+        Random random = new Random(42);
+        double[] omega = new double[numberOfFeatures];
+        double[] mu = new double[numberOfFeatures];
+        double[] sigma = new double[numberOfFeatures];
+        String[] names = new String[numberOfFeatures];
+        for(int i=0; i<numberOfFeatures; i++) {
+            omega[i] = random.nextGaussian();
+            mu[i] = random.nextGaussian();
+            sigma[i] = 1 + random.nextDouble();
+            names[i] = "f" + i;
+        }
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, shouldStandardize, mu, sigma, omega,
+                new FeatureSchema("f0", names));
+        CompiledDeltr compiled = CompiledDeltr.compile(deltr);
+
+        double[] features = new double[numberOfFeatures];
+        for(int i=0; i<numberOfFeatures; i++) {
+            features[i] = random.nextGaussian();
+        }
+        assert compiled.score(features) == deltr.score(features);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testCompiledModelChecksLength() {
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, false, 0, 1, new double[]{1, 2});
+        CompiledDeltr.compile(deltr).score(new double[3]);
+    }
+}
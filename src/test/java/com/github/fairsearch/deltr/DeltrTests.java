@@ -1,9 +1,25 @@
 package com.github.fairsearch.deltr;
 
+import com.github.fairsearch.deltr.models.ArrayFeatureProvider;
+import com.github.fairsearch.deltr.models.BufferFeatureProvider;
+import com.github.fairsearch.deltr.models.DeltrDoc;
 import com.github.fairsearch.deltr.models.DeltrDocImpl;
+import com.github.fairsearch.deltr.models.DenseDeltrDoc;
 import com.github.fairsearch.deltr.models.DeltrTopDocs;
 import com.github.fairsearch.deltr.models.DeltrTopDocsImpl;
+import com.github.fairsearch.deltr.models.FeatureProvider;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import com.github.fairsearch.deltr.models.FeatureStatistics;
+import com.github.fairsearch.deltr.models.ScoredRanking;
 import com.github.fairsearch.deltr.models.TrainStep;
+import com.github.fairsearch.deltr.models.TrainerData;
+import com.github.fairsearch.deltr.optimizers.AdamOptimizer;
+import com.github.fairsearch.deltr.optimizers.CosineSchedule;
+import com.github.fairsearch.deltr.optimizers.MomentumOptimizer;
+import com.github.fairsearch.deltr.optimizers.StepSchedule;
+import com.github.fairsearch.deltr.parsers.BinaryTrainerData;
+import com.github.fairsearch.deltr.parsers.CsvTrainerDataReader;
+import com.github.fairsearch.deltr.parsers.MappedFeatureStore;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 import org.apache.lucene.search.ScoreDoc;
@@ -17,8 +33,19 @@ import org.nd4j.linalg.ops.transforms.Transforms;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
 import java.util.stream.IntStream;
 
@@ -69,6 +96,86 @@ public class DeltrTests {
         evaluateTrainer(deltr);
     }
 
+    @Test
+    @Parameters({"test_data_1.csv, true",
+                 "test_data_1.csv, false"})
+    public void testTrainFromCsv(String fileName, boolean shouldStandardize) throws IOException {
+        String filePath = getClass().getResource(String.format("/fixtures/%s", fileName)).getFile();
+
+        TrainerData trainerData = CsvTrainerDataReader.read(Paths.get(filePath));
+
+        assert trainerData.schema().protectedFeatureName().equals("gender");
+        assert trainerData.size() == TrainerData.create(prepareData(filePath)).size();
+
+        // training on the rows gives the same model as training on the documents
+        Deltr fromCsv = new Deltr(1, 10, shouldStandardize);
+        fromCsv.setSeed(1);
+        fromCsv.train(trainerData);
+
+        Deltr fromDocs = new Deltr(1, 10, shouldStandardize);
+        fromDocs.setSeed(1);
+        fromDocs.train(prepareData(filePath));
+
+        for(int i=0; i<fromCsv.getOmega().length; i++) {
+            assert Math.abs(fromCsv.getOmega()[i] - fromDocs.getOmega()[i]) < 1e-6;
+        }
+    }
+
+    @Test
+    public void testBinaryTrainerData() throws IOException {
+        String filePath = getClass().getResource("/fixtures/test_data_1.csv").getFile();
+        TrainerData trainerData = CsvTrainerDataReader.read(Paths.get(filePath));
+
+        Path binary = Files.createTempFile("deltr", ".bin");
+        try {
+            BinaryTrainerData.write(trainerData, binary);
+            TrainerData again = BinaryTrainerData.read(binary);
+
+            assert again.schema().equals(trainerData.schema());
+            assert Arrays.equals(again.queryIds(), trainerData.queryIds());
+            assert Arrays.equals(again.protectedElementFeature(), trainerData.protectedElementFeature());
+            assert Arrays.equals(again.trainingScores(), trainerData.trainingScores());
+            assert Arrays.equals(again.features(), trainerData.features());
+        } finally {
+            Files.delete(binary);
+        }
+    }
+
+    @Test
+    public void testBinaryFilesWithLargeHeader() throws IOException {
+        // the names of the features take more than the bytes read at first to parse the header
+        int numberOfFeatures = 2000;
+        String[] names = new String[numberOfFeatures];
+        for(int i=0; i<numberOfFeatures; i++) {
+            names[i] = String.format("a_feature_with_a_rather_long_name_%06d", i);
+        }
+        FeatureSchema schema = new FeatureSchema(names[0], names);
+        double[] features = new double[3 * numberOfFeatures];
+        for(int i=1; i<features.length; i++) {
+            features[i] = i % numberOfFeatures == 0 ? i % 2 : 0.5 * i;
+        }
+        FeatureProvider docs = FeatureProvider.of(schema, features);
+        TrainerData trainerData = TrainerData.create(docs, new int[]{1, 1, 2}, new double[]{1, 0, 1});
+
+        Path path = Files.createTempFile("deltr", ".bin");
+        try {
+            BinaryTrainerData.write(trainerData, path);
+            assert Files.size(path) > (1 << 16);
+            TrainerData again = BinaryTrainerData.read(path);
+            assert again.schema().equals(schema);
+            assert Arrays.equals(again.features(), features);
+
+            MappedFeatureStore.write(docs, new int[]{7, 3, 5}, path);
+            MappedFeatureStore store = MappedFeatureStore.open(path);
+            assert store.schema().equals(schema);
+            double[] row = new double[numberOfFeatures];
+            store.copyFeatures(store.indexOf(3), row, 0);
+            assert Arrays.equals(row, Arrays.copyOfRange(features, numberOfFeatures, 2 * numberOfFeatures));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
     @Test
     @Parameters({
                 "1, 20, 5, 1, 100, false",
@@ -200,6 +307,567 @@ public class DeltrTests {
         });
     }
 
+    @Test
+    @Parameters({
+            "50, 10, false",
+            "50, 10, true",
+    })
+    public void testRankDenseDocs(int numberOfElements, int numberOfFeatures, boolean shouldStandardize) {
+        // create a dataset
+        SyntheticDatasetCreator syntheticDatasetCreator = new SyntheticDatasetCreator(1,
+                numberOfElements, 2, numberOfFeatures);
+        DeltrTopDocs predictionSet = syntheticDatasetCreator.generateDataset().get(0);
+
+        // copy the dataset to documents with primitive features
+        FeatureSchema schema = new FeatureSchema(predictionSet.doc(0).keys(), predictionSet.doc(0).protectedFeatureName());
+        DeltrDoc[] denseDocs = new DeltrDoc[numberOfElements];
+        for(int j=0; j<numberOfElements; j++) {
+            DeltrDoc doc = predictionSet.doc(j);
+            denseDocs[j] = new DenseDeltrDoc(doc.id(), (float) doc.judgement(), schema,
+                    doc.features().stream().mapToDouble(Double::doubleValue).toArray());
+        }
+        DeltrTopDocs densePredictionSet = new DeltrTopDocsImpl(predictionSet.id());
+        densePredictionSet.put(denseDocs);
+
+        // create the ranker and set omega
+        DeltrMock deltrMock = new DeltrMock(1);
+        deltrMock.setOmega(IntStream.range(0, numberOfFeatures).mapToDouble((x) -> 10 * x).toArray());
+        deltrMock.shouldStandardize = shouldStandardize;
+        deltrMock.setMu(0.5);
+        deltrMock.setSigma(2);
+
+        DeltrTopDocs result = deltrMock.rank(predictionSet);
+        DeltrTopDocs denseResult = deltrMock.rank(densePredictionSet);
+
+        //compare the results
+        for(int j=0; j<numberOfElements; j++) {
+            assert result.doc(j).id() == denseResult.doc(j).id();
+            assert Math.abs(result.doc(j).judgement() - denseResult.doc(j).judgement()) < OFFSET;
+        }
+    }
+
+    @Test
+    public void testProtectedFeatureIndex() {
+        DeltrDocImpl doc = new DeltrDocImpl(1, 1);
+        doc.put("a", 1.0);
+        doc.put("c", 2.0);
+        doc.put("b", true);
+
+        assert doc.protectedFeatureIndex() == 1;
+        assert doc.schema().equals(new FeatureSchema("b", "a", "b", "c"));
+    }
+
+    @Test
+    public void testRankChecksSchema() {
+        SyntheticDatasetCreator syntheticDatasetCreator = new SyntheticDatasetCreator(2, 10, 2, 3);
+        List<DeltrTopDocs> trainSet = syntheticDatasetCreator.generateDataset();
+
+        Deltr deltr = new Deltr(1, 5, false);
+        deltr.train(trainSet);
+        assert deltr.getSchema().equals(trainSet.get(0).schema());
+
+        // the same features with other names
+        FeatureSchema schema = new FeatureSchema("p", "p", "x", "y");
+        DeltrTopDocs predictionSet = new DeltrTopDocsImpl(3, schema);
+        predictionSet.put(new DeltrDoc[]{new DenseDeltrDoc(1, 0, schema, new double[]{1, 0.5, 0.5})});
+        try {
+            deltr.rank(predictionSet);
+            assert false;
+        } catch (InvalidParameterException e) {
+            assert true;
+        }
+    }
+
+    @Test
+    @Parameters({"2", "4"})
+    public void testScoreChecksNumberOfFeatures(int numberOfFeatures) {
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, false, 0, 1, new double[]{1, 2, 3},
+                new FeatureSchema("p", "p", "x", "y"));
+        CompiledDeltr compiled = CompiledDeltr.compile(deltr);
+
+        // the first document has the features of the model, the second one has more or fewer
+        DeltrDocImpl first = new DeltrDocImpl(1, 0);
+        first.put("p", true);
+        first.put("x", 0.5);
+        first.put("y", 0.5);
+        DeltrDocImpl second = new DeltrDocImpl(2, 0);
+        second.put("p", false);
+        for(int i=1; i<numberOfFeatures; i++) {
+            second.put("x" + i, 1.0);
+        }
+        DeltrTopDocs predictionSet = new DeltrTopDocsImpl(3);
+        predictionSet.put(new DeltrDoc[]{first, second});
+
+        try {
+            deltr.score(predictionSet, new double[2], null);
+            assert false;
+        } catch (InvalidParameterException e) {
+            assert true;
+        }
+        try {
+            compiled.score(predictionSet, new double[2], null, 2);
+            assert false;
+        } catch (InvalidParameterException e) {
+            assert true;
+        }
+    }
+
+    @Test
+    public void testJsonKeepsSchema() {
+        SyntheticDatasetCreator syntheticDatasetCreator = new SyntheticDatasetCreator(2, 10, 2, 3);
+        Deltr deltr = new Deltr(1, 5, false);
+        deltr.train(syntheticDatasetCreator.generateDataset());
+
+        Deltr again = Deltr.createFromJson(deltr.toJson());
+
+        assert again.getSchema().equals(deltr.getSchema());
+        assert Arrays.equals(again.getOmega(), deltr.getOmega());
+
+        // models serialized without a schema can still be loaded
+        Deltr precomputed = new Deltr(1, 5, 0.001, 0.001, 0.01, false, 0, 0, new double[]{1, 2});
+        assert Deltr.createFromJson(precomputed.toJson()).getSchema() == null;
+    }
+
+    @Test
+    public void testJsonKeepsFeatureStatistics() {
+        List<DeltrTopDocs> queries = new SyntheticDatasetCreator(2, 10, 2, 3).generateDataset();
+        Deltr deltr = new Deltr(1, 5, true);
+        deltr.train(queries);
+
+        String json = deltr.toJson();
+        assert json.contains("feature_mu") && json.contains("feature_sigma");
+        Deltr again = Deltr.createFromJson(json);
+        assert again.toJson().equals(json);
+        assert Arrays.equals(again.score(queries.get(0)).scores(), deltr.score(queries.get(0)).scores());
+
+        // models serialized with a single mu and sigma standardize every feature with them
+        Deltr scalar = Deltr.createFromJson("{\"gamma\":1.0,\"number_of_iterations\":5,\"learning_rate\":0.001," +
+                "\"lambda\":0.001,\"init_var\":0.01,\"standardize\":true,\"mu\":0.5,\"sigma\":2.0," +
+                "\"omega\":[1.0,3.0],\"features\":[\"a\",\"b\"],\"protected_feature\":\"a\"}");
+        assert scalar.score(new double[]{1, 4.5}) == 1 + 3 * 2;
+    }
+
+    @Test
+    public void testFeatureStatistics() {
+        // two features with a large offset compared to their spread
+        Random random = new Random(42);
+        int numberOfRows = 1000;
+        double[] features = new double[2 * numberOfRows];
+        for(int i=0; i<features.length; i++) {
+            features[i] = (i % 2 == 0 ? 1e9 : -3) + random.nextGaussian() * (i % 2 == 0 ? 0.01 : 2);
+        }
+
+        FeatureStatistics statistics = FeatureStatistics.of(features, 2);
+        assert statistics.count() == numberOfRows;
+        for(int f=0; f<2; f++) {
+            double mean = 0;
+            for(int row=0; row<numberOfRows; row++) {
+                mean += features[2 * row + f];
+            }
+            mean /= numberOfRows;
+            double variance = 0;
+            for(int row=0; row<numberOfRows; row++) {
+                variance += Math.pow(features[2 * row + f] - mean, 2);
+            }
+            variance /= numberOfRows - 1;
+
+            assert Math.abs(statistics.means()[f] - mean) <= 1e-9 * Math.abs(mean);
+            // the values of the first feature are only known up to 1e-7, a hundredth of its spread
+            assert Math.abs(statistics.variances()[f] - variance) <= 1e-4 * variance;
+            assert statistics.standardDeviations()[f] == Math.sqrt(statistics.variances()[f]);
+        }
+    }
+
+    @Test
+    public void testJsonKeepsOptimizer() throws IOException {
+        Deltr deltr = new Deltr(1, 5, 0.001, 0.001, 0.01, false, 0, 0, new double[]{1, 2});
+        deltr.setOptimizer(new AdamOptimizer(0.8, 0.99, 1e-6));
+        deltr.setSchedule(new StepSchedule(100, 0.5));
+
+        Deltr again = Deltr.createFromJson(deltr.toJson());
+        assert again.getOptimizer().equals(deltr.getOptimizer());
+        assert again.getSchedule().equals(deltr.getSchedule());
+
+        again = Deltr.createFromBinary(deltr.toBinary());
+        assert again.getOptimizer().equals(deltr.getOptimizer());
+        assert again.getSchedule().equals(deltr.getSchedule());
+
+        deltr.setOptimizer(new MomentumOptimizer(0.5));
+        deltr.setSchedule(new CosineSchedule(0.0001));
+        again = Deltr.createFromJson(deltr.toJson());
+        assert again.getOptimizer().equals(deltr.getOptimizer());
+        assert again.getSchedule().equals(deltr.getSchedule());
+
+        // the defaults are not serialized
+        Deltr plain = new Deltr(1, 5, 0.001, 0.001, 0.01, false, 0, 0, new double[]{1, 2});
+        assert !plain.toJson().contains("optimizer");
+        assert Deltr.createFromJson(plain.toJson()).getOptimizer() == null;
+    }
+
+    @Test
+    public void testBinaryModel() throws IOException {
+        SyntheticDatasetCreator syntheticDatasetCreator = new SyntheticDatasetCreator(2, 10, 2, 3);
+        Deltr deltr = new Deltr(1, 5, true);
+        deltr.train(syntheticDatasetCreator.generateDataset());
+
+        Path binary = Files.createTempFile("deltr", ".model");
+        try {
+            deltr.writeBinary(binary);
+            Deltr again = Deltr.readBinary(binary);
+
+            assert again.toJson().equals(deltr.toJson());
+            assert again.getSchema().equals(deltr.getSchema());
+        } finally {
+            Files.delete(binary);
+        }
+
+        // models without a schema or without omega
+        Deltr precomputed = new Deltr(1, 5, 0.001, 0.001, 0.01, false, 0, 0, new double[]{1, 2});
+        assert Deltr.createFromBinary(precomputed.toBinary()).toJson().equals(precomputed.toJson());
+        Deltr untrained = new Deltr(1, 5, false);
+        assert Deltr.createFromBinary(untrained.toBinary()).getOmega() == null;
+    }
+
+    @Test
+    public void testRankDoesNotChangeFeatures() {
+        SyntheticDatasetCreator syntheticDatasetCreator = new SyntheticDatasetCreator(1, 50, 2, 5);
+        DeltrTopDocs predictionSet = syntheticDatasetCreator.generateDataset().get(0);
+        Map<Integer, List<Double>> features = new HashMap<>();
+        for(int j=0; j<predictionSet.size(); j++) {
+            features.put(predictionSet.doc(j).id(), predictionSet.doc(j).features());
+        }
+
+        DeltrMock deltrMock = new DeltrMock(1);
+        deltrMock.setOmega(new double[]{-1, 2, -3, 4, -5});
+        deltrMock.shouldStandardize = true;
+        deltrMock.setMu(0.5);
+        deltrMock.setSigma(2);
+
+        // the scores do not change the documents
+        ScoredRanking scored = deltrMock.score(predictionSet);
+        for(int j=0; j<predictionSet.size(); j++) {
+            assert predictionSet.doc(j).features().equals(features.get(predictionSet.doc(j).id()));
+        }
+
+        // ranking twice gives the same ranking as the scores
+        deltrMock.rank(predictionSet);
+        DeltrTopDocs result = deltrMock.rank(predictionSet);
+        for(int j=0; j<result.size(); j++) {
+            assert result.doc(j).features().equals(features.get(result.doc(j).id()));
+            assert Math.abs(result.doc(j).judgement() - scored.score(j)) < OFFSET;
+        }
+    }
+
+    @Test
+    @Parameters({"0", "1", "10", "17", "1000"})
+    public void testSortScores(int size) {
+        Random random = new Random(size);
+        double[] scores = new double[size];
+        for(int i=0; i<size; i++) {
+            // few distinct values, so that there are ties
+            scores[i] = random.nextInt(10);
+        }
+
+        int[] order = new int[size];
+        ScoredRanking.sort(scores, order, size);
+
+        // compare with a stable sort of the boxed positions
+        Integer[] expected = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+        Arrays.sort(expected, (o1, o2) -> Double.compare(scores[o2], scores[o1]));
+        for(int i=0; i<size; i++) {
+            assert order[i] == expected[i];
+        }
+    }
+
+    @Test
+    @Parameters({"10, 0", "10, 3", "10, 10", "1000, 1", "1000, 50", "1000, 999"})
+    public void testSortTopScores(int size, int k) {
+        Random random = new Random(size + k);
+        double[] scores = new double[size];
+        for(int i=0; i<size; i++) {
+            // few distinct values, so that there are ties
+            scores[i] = random.nextInt(20);
+        }
+
+        int[] expected = new int[size];
+        ScoredRanking.sort(scores, expected, size);
+        int[] order = new int[size];
+        ScoredRanking.sort(scores, order, size, k);
+
+        // the top is the same as in the full sort
+        for(int i=0; i<k; i++) {
+            assert order[i] == expected[i];
+        }
+        // followed by the rest of the positions in ascending order
+        int[] rest = Arrays.copyOfRange(expected, k, size);
+        Arrays.sort(rest);
+        assert Arrays.equals(rest, Arrays.copyOfRange(order, k, size));
+    }
+
+    @Test
+    @Parameters({"100, 10", "100, 100", "100, 200"})
+    public void testRankTopK(int numberOfElements, int k) {
+        SyntheticDatasetCreator syntheticDatasetCreator = new SyntheticDatasetCreator(1, numberOfElements, 2, 4);
+        DeltrTopDocs predictionSet = syntheticDatasetCreator.generateDataset().get(0);
+
+        DeltrMock deltrMock = new DeltrMock(1);
+        deltrMock.setOmega(new double[]{1, -2, 3, -4});
+
+        //the judgements are compared rather than the ids, documents can tie once their scores are stored as floats
+        double[] expected = new double[numberOfElements];
+        DeltrTopDocs ranked = deltrMock.rank(predictionSet);
+        for(int j=0; j<numberOfElements; j++) {
+            expected[j] = ranked.doc(j).judgement();
+        }
+
+        // shuffle the documents and rank only the top k
+        List<DeltrDoc> docs = new ArrayList<>();
+        for(int j=0; j<numberOfElements; j++) {
+            docs.add(predictionSet.doc(j));
+        }
+        Collections.shuffle(docs, new Random(k));
+        predictionSet.put(docs.toArray(new DeltrDoc[0]));
+        DeltrTopDocs result = deltrMock.rank(predictionSet, k);
+
+        assert result.size() == numberOfElements;
+        for(int j=0; j<Math.min(k, numberOfElements); j++) {
+            assert result.doc(j).judgement() == expected[j];
+        }
+    }
+
+    @Test
+    @Parameters({"false, 1000", "true, 1000", "false, 5", "true, 5"})
+    public void testScoreBatch(boolean shouldStandardize, int k) {
+        List<DeltrTopDocs> queries = new SyntheticDatasetCreator(7, 30, 2, 5, 3).generateDataset();
+        TrainerData block = TrainerData.create(queries);
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, shouldStandardize, 0.3, 1.7,
+                new double[]{1, -2, 0.5, 3, -1}, block.schema());
+
+        int[] queryOffsets = new int[queries.size() + 1];
+        for(int q=0; q<queries.size(); q++) {
+            queryOffsets[q + 1] = queryOffsets[q] + queries.get(q).size();
+        }
+        double[] scores = new double[block.size()];
+        int[] order = new int[block.size()];
+        deltr.scoreBatch(block.features(), queryOffsets, scores, order, k);
+
+        // the same features in a direct buffer, after some padding
+        DoubleBuffer buffer = ByteBuffer.allocateDirect((block.features().length + 3) * Double.BYTES)
+                .asDoubleBuffer();
+        buffer.position(3);
+        buffer.put(block.features()).position(3);
+        double[] bufferScores = new double[block.size()];
+        int[] bufferOrder = new int[block.size()];
+        deltr.scoreBatch(buffer, queryOffsets, bufferScores, bufferOrder, k);
+        assert buffer.position() == 3;
+
+        for(int q=0; q<queries.size(); q++) {
+            ScoredRanking expected = deltr.score(queries.get(q));
+            int offset = queryOffsets[q];
+            for(int j=0; j<expected.size(); j++) {
+                assert Math.abs(scores[offset + j] - expected.scores()[j]) < 1e-9;
+                assert Math.abs(bufferScores[offset + j] - expected.scores()[j]) < 1e-9;
+            }
+            for(int rank=0; rank<Math.min(k, expected.size()); rank++) {
+                assert order[offset + rank] - offset == expected.index(rank);
+                assert bufferOrder[offset + rank] - offset == expected.index(rank);
+            }
+        }
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testScoreBatchChecksLength() {
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, false, 0, 1, new double[]{1, 2});
+        deltr.scoreBatch(new double[5], new int[]{0, 3}, new double[3], null);
+    }
+
+    @Test
+    @Parameters({"false", "true"})
+    public void testScoreFeatureProvider(boolean shouldStandardize) {
+        DeltrTopDocs query = new SyntheticDatasetCreator(1, 50, 2, 5, 3).generateDataset().get(0);
+        TrainerData block = TrainerData.create(Collections.singletonList(query));
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, shouldStandardize, 0.3, 1.7,
+                new double[]{1, -2, 0.5, 3, -1}, block.schema());
+
+        // the same features in an array and in a direct buffer
+        ArrayFeatureProvider array = FeatureProvider.of(block.schema(), block.features());
+        DoubleBuffer buffer = ByteBuffer.allocateDirect(block.features().length * Double.BYTES).asDoubleBuffer();
+        buffer.put(block.features()).flip();
+        BufferFeatureProvider direct = FeatureProvider.of(block.schema(), buffer);
+        assert array.numberOfDocuments() == query.size() && direct.numberOfDocuments() == query.size();
+
+        ScoredRanking expected = deltr.score(query);
+        for(FeatureProvider docs : Arrays.asList(array, direct)) {
+            ScoredRanking ranking = deltr.score(docs);
+            assert Arrays.equals(ranking.scores(), expected.scores());
+            for(int rank=0; rank<expected.size(); rank++) {
+                assert ranking.index(rank) == expected.index(rank);
+            }
+            for(int j=0; j<query.size(); j++) {
+                assert docs.feature(j, 2) == block.features()[j * 5 + 2];
+            }
+        }
+
+        // training data read through a provider are the training data of the documents
+        int[] queryIds = new int[query.size()];
+        Arrays.fill(queryIds, query.id());
+        TrainerData again = TrainerData.create(direct, queryIds, block.trainingScores());
+        assert Arrays.equals(again.queryIds(), block.queryIds());
+        assert Arrays.equals(again.protectedElementFeature(), block.protectedElementFeature());
+        assert Arrays.equals(again.features(), block.features());
+        assert Arrays.equals(again.trainingScores(), block.trainingScores());
+    }
+
+    @Test
+    public void testMappedFeatureStore() throws IOException {
+        List<DeltrTopDocs> queries = new SyntheticDatasetCreator(1, 200, 2, 5, 3).generateDataset();
+        TrainerData block = TrainerData.create(queries);
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, true, 0.3, 1.7, new double[]{1, -2, 0.5, 3, -1},
+                block.schema());
+
+        // documents with scattered IDs, in descending order
+        Random random = new Random(42);
+        int[] ids = new int[block.size()];
+        for(int j=0; j<ids.length; j++) {
+            ids[j] = 1000 * (ids.length - j) + random.nextInt(1000) - 50000;
+        }
+        FeatureProvider docs = FeatureProvider.of(block.schema(), block.features());
+
+        Path path = Files.createTempFile("deltr", ".features");
+        try {
+            MappedFeatureStore.write(docs, ids, path);
+            MappedFeatureStore store = MappedFeatureStore.open(path);
+            assert store.schema().equals(block.schema());
+            assert store.numberOfDocuments() == ids.length;
+            for(int j=1; j<store.numberOfDocuments(); j++) {
+                assert store.id(j - 1) < store.id(j);
+            }
+            assert store.indexOf(ids[0] + 1) < 0;
+
+            // the candidates of a query, by ID
+            int[] candidates = {17, 3, 150, 0, 199};
+            double[] expected = new double[candidates.length];
+            for(int c=0; c<candidates.length; c++) {
+                int j = candidates[c];
+                expected[c] = deltr.score(Arrays.copyOfRange(block.features(), j * 5, j * 5 + 5));
+                candidates[c] = ids[j];
+            }
+            FeatureProvider selection = store.select(candidates);
+            assert Arrays.equals(deltr.score(selection).scores(), expected);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testMappedFeatureStoreChecksIds() throws IOException {
+        FeatureProvider docs = FeatureProvider.of(new FeatureSchema("a", "a", "b"), new double[6]);
+        MappedFeatureStore.write(docs, new int[]{4, 1, 4}, Paths.get("unused"));
+    }
+
+    @Test
+    public void testScoreCache() throws IOException {
+        // two queries whose documents are numbered from 0 in each query
+        List<DeltrTopDocs> queries = new SyntheticDatasetCreator(2, 30, 2, 5, 3).generateDataset();
+        TrainerData block = TrainerData.create(queries);
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, true, 0.3, 1.7, new double[]{1, -2, 0.5, 3, -1},
+                block.schema());
+        ScoreCache cache = new ScoreCache(1000);
+        deltr.setScoreCache(cache);
+
+        // the IDs of a ranking are not corpus-wide, so rankings never use the cache
+        for(DeltrTopDocs query : queries) {
+            double[] scores = deltr.score(query).scores();
+            double[] features = new double[5];
+            for(int j=0; j<query.size(); j++) {
+                assert query.doc(j).id() < query.size();
+                query.doc(j).copyFeatures(features, 0);
+                assert scores[j] == deltr.score(features);
+            }
+        }
+        assert cache.hits() == 0 && cache.misses() == 0 && cache.size() == 0;
+
+        // a corpus with IDs of its own, from which both queries select their candidates
+        int[] ids = new int[block.size()];
+        for(int j=0; j<ids.length; j++) {
+            ids[j] = 1000 + 7 * j;
+        }
+        double[] expected = new double[block.size()];
+        for(int j=0; j<block.size(); j++) {
+            expected[j] = deltr.score(Arrays.copyOfRange(block.features(), j * 5, j * 5 + 5));
+        }
+        Path path = Files.createTempFile("deltr", ".features");
+        try {
+            MappedFeatureStore.write(FeatureProvider.of(block.schema(), block.features()), ids, path);
+            MappedFeatureStore store = MappedFeatureStore.open(path);
+            int[] first = Arrays.copyOfRange(ids, 0, 30);
+            int[] second = Arrays.copyOfRange(ids, 15, 45);
+            assert Arrays.equals(deltr.score(store.select(first), first).scores(),
+                    Arrays.copyOfRange(expected, 0, 30));
+            assert cache.misses() == 30 && cache.hits() == 0 && cache.size() == 30;
+            // the candidates both queries share come from the cache
+            assert Arrays.equals(deltr.score(store.select(second), second).scores(),
+                    Arrays.copyOfRange(expected, 15, 45));
+            assert cache.misses() == 45 && cache.hits() == 15 && cache.size() == 45;
+
+            // another model (e.g. loaded from JSON) sharing the cache has scores of its own
+            Deltr other = new Deltr(1, 1, 0.001, 0.001, 0.01, true, 0.3, 1.7, new double[]{-1, 2, 0.5, 3, 1},
+                    block.schema());
+            assert other.getVersion() != deltr.getVersion();
+            other.setScoreCache(cache);
+            ScoredRanking otherScores = other.score(store.select(first), first);
+            assert cache.misses() == 75 && cache.hits() == 15;
+            assert Arrays.equals(otherScores.scores(), other.score(store.select(first)).scores());
+
+            // a new omega gets a new version
+            int version = deltr.getVersion();
+            deltr.setSeed(42);
+            deltr.train(queries);
+            assert deltr.getVersion() != version;
+            ScoredRanking trained = deltr.score(store.select(first), first);
+            assert cache.misses() == 105;
+            assert Arrays.equals(trained.scores(), deltr.score(store.select(first)).scores());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testScoreCacheEviction() {
+        // a single set of 8 entries
+        ScoreCache cache = new ScoreCache(8);
+        for(int doc=0; doc<8; doc++) {
+            cache.put(1, doc, doc);
+        }
+        assert cache.get(1, 0) == 0;
+        cache.put(1, 8, 8);
+        // the first score not used since it was put is evicted, the used one gets a second chance
+        assert cache.evictions() == 1 && cache.size() == 8;
+        assert Double.isNaN(cache.get(1, 1));
+        assert cache.get(1, 0) == 0 && cache.get(1, 8) == 8;
+        // the candidates of a query at once
+        double[] scores = new double[3];
+        assert cache.get(1, new int[]{0, 1, 8}, scores) == 2;
+        assert scores[0] == 0 && Double.isNaN(scores[1]) && scores[2] == 8;
+        // the same document of another version is another score
+        assert Double.isNaN(cache.get(2, 8));
+
+        // the sets of a larger cache never hold more than the maximum size
+        cache = new ScoreCache(20);
+        assert cache.maximumSize() == 16;
+        for(int doc=0; doc<100; doc++) {
+            cache.put(1, doc, doc);
+        }
+        assert cache.size() == 16 && cache.evictions() == 84;
+        cache.invalidate();
+        assert cache.size() == 0 && Double.isNaN(cache.get(1, 99));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testFeatureProviderChecksLength() {
+        FeatureProvider.of(new FeatureSchema("a", "a", "b"), new double[5]);
+    }
+
     private List<DeltrTopDocs> prepareData(String filePath) {
         List<DeltrTopDocs> ranks = new ArrayList<>();
 
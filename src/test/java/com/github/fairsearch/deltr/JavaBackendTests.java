@@ -0,0 +1,88 @@
+package com.github.fairsearch.deltr;
+
+import com.github.fairsearch.deltr.models.FeatureProvider;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import com.github.fairsearch.deltr.models.ScoredRanking;
+import com.github.fairsearch.deltr.models.TrainerData;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Trains with the `JAVA` backend and ranks with the trained model using nothing but the classes of the library and
+ * plain arrays, so that it passes without ND4J on the classpath. The `testWithoutNd4j` task of the build runs it
+ * that way, with the system property `deltr.withoutNd4j` set.
+ */
+public class JavaBackendTests {
+
+    private static final boolean WITHOUT_ND4J = Boolean.getBoolean("deltr.withoutNd4j");
+
+    @Test
+    public void testTrainAndScoreWithJavaBackend() {
+        if(WITHOUT_ND4J) {
+            // the classpath of the task really has no ND4J
+            try {
+                Class.forName("org.nd4j.linalg.factory.Nd4j");
+                assert false;
+            } catch(ClassNotFoundException e) {
+                // expected
+            }
+        }
+
+        TrainerData trainerData = createTrainerData();
+        Deltr deltr = new Deltr(1, 20, 0.05, 0.001, 1.0, true);
+        deltr.setSeed(5);
+        deltr.setBackend(TrainerBackend.JAVA);
+        deltr.train(trainerData);
+        assert deltr.getLog().size() == 20;
+
+        // the model, loaded back, ranks like the trained one
+        Deltr loaded = Deltr.createFromJson(deltr.toJson());
+        FeatureProvider docs = FeatureProvider.of(trainerData.schema(), trainerData.features());
+        ScoredRanking expected = deltr.score(docs);
+        ScoredRanking scored = loaded.score(docs);
+        for(int j=0; j<docs.numberOfDocuments(); j++) {
+            assert scored.scores()[j] == expected.scores()[j];
+        }
+        double[] compiled = new double[docs.numberOfDocuments()];
+        CompiledDeltr.compile(loaded).score(docs, compiled, null, 0);
+        for(int j=0; j<docs.numberOfDocuments(); j++) {
+            assert compiled[j] == expected.scores()[j];
+        }
+    }
+
+    @Test
+    public void testNd4jBackendNeedsNd4j() {
+        Deltr deltr = new Deltr(1, 1, 0.05, 0.001, 1.0, false);
+        deltr.setBackend(TrainerBackend.ND4J);
+        try {
+            deltr.train(createTrainerData());
+            assert !WITHOUT_ND4J;
+        } catch(IllegalStateException e) {
+            assert WITHOUT_ND4J;
+        }
+    }
+
+    /**
+     * 4 queries of 10 documents, with the protected feature first and 2 more features
+     */
+    private static TrainerData createTrainerData() {
+        Random random = new Random(11);
+        FeatureSchema schema = new FeatureSchema("protected", "protected", "a", "b");
+        int numberOfRows = 40;
+        double[] features = new double[numberOfRows * schema.size()];
+        int[] queryIds = new int[numberOfRows];
+        double[] judgements = new double[numberOfRows];
+        for(int row=0; row<numberOfRows; row++) {
+            queryIds[row] = row / 10;
+            int isProtected = random.nextDouble() < 0.3 ? 1 : 0;
+            double a = random.nextGaussian();
+            double b = 5 + 2 * random.nextGaussian();
+            features[row * 3] = isProtected;
+            features[row * 3 + 1] = a;
+            features[row * 3 + 2] = b;
+            judgements[row] = a + 0.5 * b - isProtected;
+        }
+        return TrainerData.create(FeatureProvider.of(schema, features), queryIds, judgements);
+    }
+}
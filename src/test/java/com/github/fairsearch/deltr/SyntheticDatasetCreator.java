@@ -23,12 +23,27 @@ public class SyntheticDatasetCreator {
 
     public SyntheticDatasetCreator(int numberOfQuestions, int numberOfElementsPerQuestion,
                                    int numberOfCategories, int numberOfFeatures) {
+        this(numberOfQuestions, numberOfElementsPerQuestion, numberOfCategories, numberOfFeatures,
+                new MersenneTwister());
+    }
+
+    /**
+     * Creates a generator that always generates the same dataset for the same seed
+     */
+    public SyntheticDatasetCreator(int numberOfQuestions, int numberOfElementsPerQuestion,
+                                   int numberOfCategories, int numberOfFeatures, long seed) {
+        this(numberOfQuestions, numberOfElementsPerQuestion, numberOfCategories, numberOfFeatures,
+                new MersenneTwister(seed));
+    }
+
+    private SyntheticDatasetCreator(int numberOfQuestions, int numberOfElementsPerQuestion,
+                                    int numberOfCategories, int numberOfFeatures, MersenneTwister random) {
         this.numberOfQuestions = numberOfQuestions;
         this.numberOfElementsPerQuestion = numberOfElementsPerQuestion;
         this.numberOfCategories = numberOfCategories;
         this.numberOfFeatures = numberOfFeatures;
 
-        random = new MersenneTwister();
+        this.random = random;
     }
 
     public List<DeltrTopDocs> generateDataset() {
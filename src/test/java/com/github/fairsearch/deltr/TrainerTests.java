@@ -0,0 +1,472 @@
+package com.github.fairsearch.deltr;
+
+import com.github.fairsearch.deltr.models.DeltrDoc;
+import com.github.fairsearch.deltr.models.DeltrDocImpl;
+import com.github.fairsearch.deltr.models.DeltrTopDocs;
+import com.github.fairsearch.deltr.models.DeltrTopDocsImpl;
+import com.github.fairsearch.deltr.models.TrainStep;
+import com.github.fairsearch.deltr.models.TrainerData;
+import com.github.fairsearch.deltr.optimizers.AdamOptimizer;
+import com.github.fairsearch.deltr.optimizers.ConstantSchedule;
+import com.github.fairsearch.deltr.optimizers.CosineSchedule;
+import com.github.fairsearch.deltr.optimizers.EarlyStopping;
+import com.github.fairsearch.deltr.optimizers.LearningRateSchedule;
+import com.github.fairsearch.deltr.optimizers.MomentumOptimizer;
+import com.github.fairsearch.deltr.optimizers.Optimizer;
+import com.github.fairsearch.deltr.optimizers.SgdOptimizer;
+import com.github.fairsearch.deltr.optimizers.StepSchedule;
+import com.github.fairsearch.deltr.optimizers.StopReason;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnitParamsRunner.class)
+public class TrainerTests {
+
+    private static final double OFFSET = 0.001; // result tolerance for TrainerTests
+
+    /**
+     * The expected omegas were obtained with the per-document (one gradient row per element) implementation
+     * of the trainer, so they guard the per-query computation against changes in the loss. The standardized ones
+     * were obtained since every feature is standardized with its own mu and sigma.
+     */
+    @Test
+    @Parameters({
+            "0, false, -0.4184992015361786, -0.04076888784766197, -0.010355389676988125",
+            "1, false, -0.13796570897102356, -0.04131961613893509, -0.011167806573212147",
+            "0, true, -0.4184935692232103, -0.044076536409556874, -0.010250365664251155",
+            "1, true, -0.1380454029887915, -0.04611368589103224, -0.006219311710447071"
+    })
+    public void testTrainMatchesReference(double gamma, boolean shouldStandardize,
+                                          double omega0, double omega1, double omega2) {
+        Nd4j.getRandom().setSeed(7);
+        Deltr deltr = new Deltr(gamma, 50, 0.05, 0.001, 1.0, shouldStandardize);
+
+        deltr.train(createDataset(11, 5, 12, 3));
+
+        assertArrayEquals(new double[]{omega0, omega1, omega2}, deltr.getOmega(), OFFSET);
+    }
+
+    @Test
+    public void testGradientHasOneEntryPerFeature() {
+        Deltr deltr = new Deltr(1, 5, 0.05, 0.001, 1.0, false);
+
+        deltr.train(createDataset(3, 4, 10, 5));
+
+        for(TrainStep step : deltr.getLog()) {
+            assertEquals(5, step.getGrad().length());
+            assertEquals(4, step.getCost().length());
+        }
+    }
+
+    @Test
+    public void testQueryIndexGroupsRows() {
+        int[] queryIds = new int[]{5, 5, 9, 5, 9, 9, 7};
+        int[] protectedIdxs = new int[]{1, 0, 0, 1, 1, 0, 0};
+
+        QueryIndex index = new QueryIndex(queryIds, protectedIdxs);
+
+        assertEquals(3, index.numberOfQueries());
+        assertEquals(7, index.numberOfRows());
+        assertArrayEquals(new int[]{5, 9, 7},
+                new int[]{index.queryId(0), index.queryId(1), index.queryId(2)});
+        // non-protected rows first, then the protected ones, keeping their relative order
+        assertArrayEquals(new int[]{1, 0, 3, 2, 5, 4, 6}, index.order());
+        assertArrayEquals(new int[]{0, 1, 3}, new int[]{index.start(0), index.protectedStart(0), index.end(0)});
+        assertArrayEquals(new int[]{3, 5, 6}, new int[]{index.start(1), index.protectedStart(1), index.end(1)});
+        assertArrayEquals(new int[]{6, 7, 7}, new int[]{index.start(2), index.protectedStart(2), index.end(2)});
+    }
+
+    @Test
+    public void testTrainWithoutProtectedItemsInQuery() {
+        List<DeltrTopDocs> trainSet = createDataset(3, 2, 10, 3);
+        // add a query without protected items
+        DeltrDoc[] docs = new DeltrDoc[3];
+        for(int j=0; j<docs.length; j++) {
+            DeltrDocImpl doc = new DeltrDocImpl(j, 1.0f - j * 0.1f, false);
+            doc.put("0", false);
+            doc.put("1", 1.0 - j * 0.2);
+            doc.put("2", 0.5);
+            docs[j] = doc;
+        }
+        DeltrTopDocs topDocs = new DeltrTopDocsImpl(trainSet.size());
+        topDocs.put(docs);
+        trainSet.add(topDocs);
+
+        Deltr deltr = new Deltr(1, 10, false);
+        deltr.train(trainSet);
+
+        for(double w : deltr.getOmega()) {
+            assert !Double.isNaN(w);
+        }
+    }
+
+    @Test
+    public void testTrainWithSeedIsReproducible() {
+        assertArrayEquals(trainWithSeed(1), trainWithSeed(1), 0);
+    }
+
+    @Test
+    public void testConcurrentTrainingMatchesSerial() throws Exception {
+        int numberOfModels = 4;
+
+        double[][] expected = new double[numberOfModels][];
+        for(int i=0; i<numberOfModels; i++) {
+            expected[i] = trainWithSeed(i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfModels);
+        try {
+            // start all the trainings at the same time
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<double[]>> results = new ArrayList<>();
+            for(int i=0; i<numberOfModels; i++) {
+                final int model = i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return trainWithSeed(model);
+                }));
+            }
+            start.countDown();
+
+            for(int i=0; i<numberOfModels; i++) {
+                assertArrayEquals(expected[i], results.get(i).get(), 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMiniBatchWithSeedIsReproducible() {
+        List<DeltrTopDocs> trainSet = createDataset(21, 7, 10, 3);
+
+        double[] first = trainMiniBatch(trainSet, 2);
+        assertArrayEquals(first, trainMiniBatch(trainSet, 2), 0);
+
+        // every step sees a different part of the data, so the model differs from the full batch one
+        assert !Arrays.equals(first, trainMiniBatch(trainSet, 0));
+    }
+
+    @Test
+    public void testMiniBatchOfAllQueriesIsFullBatch() {
+        List<DeltrTopDocs> trainSet = createDataset(22, 4, 10, 3);
+
+        assertArrayEquals(trainMiniBatch(trainSet, 0), trainMiniBatch(trainSet, 4), 0);
+        assertArrayEquals(trainMiniBatch(trainSet, 0), trainMiniBatch(trainSet, 10), 0);
+    }
+
+    @Test
+    public void testParallelTrainingIsReproducible() {
+        List<DeltrTopDocs> trainSet = createDataset(23, 9, 10, 3);
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            double[] first = trainInParallel(trainSet, pool);
+            assertArrayEquals(first, trainInParallel(trainSet, pool), 0);
+            assertArrayEquals(first, trainInParallel(trainSet, new ForkJoinPool(3)), 0);
+
+            // only the order of the sums differs from the training on the calling thread
+            assertArrayEquals(trainInParallel(trainSet, null), first, 1e-5);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelTrainingWithMoreThreadsThanQueries() {
+        List<DeltrTopDocs> trainSet = createDataset(24, 2, 10, 3);
+
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            assertArrayEquals(trainInParallel(trainSet, null), trainInParallel(trainSet, pool), 1e-5);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @Parameters({"0", "1"})
+    public void testBackendsComputeTheSameLoss(double gamma) {
+        TrainerData trainerData = TrainerData.create(createDataset(25, 6, 12, 4));
+        double[] omega = {-0.3, -0.2, 0.1, 0.05};
+        int[] queries = {4, 1, 3};
+
+        for(int[] q : new int[][]{null, queries}) {
+            double[] nd4jGradient = new double[omega.length];
+            double[] javaGradient = new double[omega.length];
+            TrainStep nd4j = evaluate(TrainerBackend.ND4J, gamma, trainerData, omega, q, nd4jGradient);
+            TrainStep java = evaluate(TrainerBackend.JAVA, gamma, trainerData, omega, q, javaGradient);
+
+            assertArrayEquals(nd4j.getCostValues(), java.getCostValues(), 1e-4);
+            assertEquals(nd4j.getLossStandard(), java.getLossStandard(), 1e-4);
+            assertEquals(nd4j.getLossExposure(), java.getLossExposure(), 1e-5);
+            assertArrayEquals(nd4jGradient, javaGradient, 1e-4);
+        }
+    }
+
+    @Test
+    @Parameters({"0, false", "1, false", "0, true", "1, true"})
+    public void testBackendsTrainTheSameModel(double gamma, boolean shouldStandardize) {
+        List<DeltrTopDocs> trainSet = createDataset(26, 5, 12, 3);
+
+        Deltr nd4j = trainWithBackend(trainSet, gamma, shouldStandardize, TrainerBackend.ND4J);
+        Deltr java = trainWithBackend(trainSet, gamma, shouldStandardize, TrainerBackend.JAVA);
+        // the backend changes the speed of the training, not the model
+        for(int i=0; i<nd4j.getOmega().length; i++) {
+            assertEquals(nd4j.mu(i), java.mu(i), 1e-12);
+            assertEquals(nd4j.sigma(i), java.sigma(i), 1e-12);
+        }
+        assertArrayEquals(nd4j.getOmega(), java.getOmega(), OFFSET);
+    }
+
+    @Test
+    public void testTopOneProbabilitiesOfLargePredictions() {
+        TopOneProbabilities topOne = new TopOneProbabilities();
+        // exp(1000) overflows, the largest prediction is subtracted first
+        topOne.compute(new double[]{0, 1000, 999, 998, -1000}, 1, 3, 5);
+
+        double normalization = 1 + Math.exp(-1) + Math.exp(-2);
+        assertEquals(1000 + Math.log(normalization), topOne.logSumExp(), 1e-9);
+        assertEquals(1 / normalization, topOne.probability(0), 1e-12);
+        assertEquals(Math.exp(-2) / normalization, topOne.probability(2), 1e-12);
+        assertEquals(0, topOne.probability(3), 0);
+        assertEquals((1 + Math.exp(-1)) / normalization / 2 / Math.log(2)
+                - Math.exp(-2) / normalization / 2 / Math.log(2), topOne.exposureDiff(), 1e-12);
+    }
+
+    @Test
+    @Parameters({"ND4J", "JAVA"})
+    public void testLargePredictionsDoNotOverflow(TrainerBackend backend) {
+        TrainerData trainerData = TrainerData.create(createDataset(27, 4, 10, 3));
+        double[] features = trainerData.features().clone();
+        for(int i=0; i<features.length; i++) {
+            features[i] *= 1000;
+        }
+        trainerData = new TrainerData(trainerData.schema(), trainerData.queryIds(),
+                trainerData.protectedElementFeature(), features, trainerData.trainingScores());
+
+        double[] gradient = new double[3];
+        TrainStep step = evaluate(backend, 1, trainerData, new double[]{-1, 1, 1}, null, gradient);
+
+        for(double cost : step.getCostValues()) {
+            assert Double.isFinite(cost);
+        }
+        assert Double.isFinite(step.getLossExposure()) && step.getLossExposure() > 0;
+        for(double value : gradient) {
+            assert Double.isFinite(value);
+        }
+    }
+
+    @Test
+    public void testOptimizersReduceCost() {
+        List<DeltrTopDocs> trainSet = createDataset(23, 5, 10, 4);
+        double initial = initialCost(trainSet);
+
+        double sgd = finalCost(trainSet, 0.001, new SgdOptimizer(), null);
+        assert sgd < initial;
+        // with the same learning rate, momentum goes further in the same number of iterations
+        assert finalCost(trainSet, 0.001, new MomentumOptimizer(0.9), null) < sgd;
+        // the steps of Adam do not depend on the scale of the gradient
+        assert finalCost(trainSet, 0.05, new AdamOptimizer(), new CosineSchedule(0.001)) < sgd;
+    }
+
+    @Test
+    public void testDefaultOptimizerIsGradientDescent() {
+        List<DeltrTopDocs> trainSet = createDataset(24, 3, 10, 3);
+
+        Deltr sgd = new Deltr(1, 10, 0.05, 0.001, 1.0, false);
+        sgd.setSeed(5);
+        sgd.setOptimizer(new SgdOptimizer());
+        sgd.setSchedule(new ConstantSchedule());
+        sgd.train(trainSet);
+
+        assertArrayEquals(trainWithSeed(trainSet, 5), sgd.getOmega(), 0);
+    }
+
+    @Test
+    public void testSchedules() {
+        assertEquals(0.1, new ConstantSchedule().learningRate(0.1, 50, 100), 0);
+
+        StepSchedule step = new StepSchedule(10, 0.5);
+        assertEquals(0.1, step.learningRate(0.1, 9, 100), 1e-12);
+        assertEquals(0.05, step.learningRate(0.1, 10, 100), 1e-12);
+        assertEquals(0.025, step.learningRate(0.1, 25, 100), 1e-12);
+
+        CosineSchedule cosine = new CosineSchedule(0.01);
+        assertEquals(0.1, cosine.learningRate(0.1, 0, 100), 1e-12);
+        assertEquals(0.055, cosine.learningRate(0.1, 50, 100), 1e-12);
+        assert cosine.learningRate(0.1, 99, 100) > 0.01;
+    }
+
+    @Test
+    public void testStopsWhenCostConverges() {
+        Deltr deltr = new Deltr(1, 1000, 0.05, 0.001, 1.0, false);
+        deltr.setSeed(1);
+        deltr.setEarlyStopping(new EarlyStopping(1e-4, 0, 0));
+        deltr.train(createDataset(31, 2, 8, 6));
+
+        assertEquals(StopReason.COST_CONVERGED, deltr.getStopReason());
+        assert deltr.getLog().size() < 1000;
+        int last = deltr.getLog().size() - 1;
+        double change = deltr.getLog().get(last - 1).getTotalCost() - deltr.getLog().get(last).getTotalCost();
+        assert Math.abs(change) <= 1e-4 * deltr.getLog().get(last - 1).getTotalCost();
+    }
+
+    @Test
+    public void testStopsWhenGradientVanishes() {
+        List<DeltrTopDocs> trainSet = createDataset(31, 2, 8, 6);
+
+        Deltr deltr = new Deltr(1, 100, 0.05, 0.001, 1.0, false);
+        deltr.setSeed(1);
+        deltr.setEarlyStopping(new EarlyStopping(0, Double.MAX_VALUE, 0));
+        deltr.train(trainSet);
+
+        // the first gradient is already below the tolerance, so omega is never updated
+        assertEquals(StopReason.GRADIENT_CONVERGED, deltr.getStopReason());
+        assertEquals(1, deltr.getLog().size());
+        assertArrayEquals(deltr.getLog().get(0).getOmega().data().asDouble(), deltr.getOmega(), 1e-6);
+    }
+
+    @Test
+    public void testStopsWhenValidationDoesNotImprove() {
+        List<DeltrTopDocs> trainSet = createDataset(31, 2, 8, 6);
+        List<DeltrTopDocs> validation = createDataset(32, 6, 10, 6);
+
+        Deltr deltr = new Deltr(1, 300, 0.2, 0.001, 1.0, false);
+        deltr.setSeed(1);
+        deltr.setEarlyStopping(new EarlyStopping(0, 0, 5));
+        deltr.train(trainSet, validation);
+
+        assertEquals(StopReason.NO_VALIDATION_IMPROVEMENT, deltr.getStopReason());
+        assert deltr.getLog().size() < 300;
+
+        // the result is the omega with the lowest held-out cost
+        TrainStep best = deltr.getLog().get(0);
+        for(TrainStep step : deltr.getLog()) {
+            if(step.getValidationCost() < best.getValidationCost()) {
+                best = step;
+            }
+        }
+        assertArrayEquals(best.getOmega().data().asDouble(), deltr.getOmega(), 1e-6);
+    }
+
+    @Test
+    public void testTrainsAllIterationsWithoutEarlyStopping() {
+        Deltr deltr = new Deltr(1, 20, 0.2, 0.001, 1.0, false);
+        deltr.train(createDataset(31, 2, 8, 6), createDataset(32, 6, 10, 6));
+
+        assertEquals(StopReason.MAX_ITERATIONS, deltr.getStopReason());
+        assertEquals(20, deltr.getLog().size());
+        assert !Double.isNaN(deltr.getLog().get(19).getValidationCost());
+    }
+
+    private static double finalCost(List<DeltrTopDocs> trainSet, double learningRate, Optimizer optimizer,
+                                    LearningRateSchedule schedule) {
+        Deltr deltr = new Deltr(1, 40, learningRate, 0.001, 1.0, false);
+        deltr.setSeed(9);
+        deltr.setOptimizer(optimizer);
+        deltr.setSchedule(schedule);
+        deltr.train(trainSet);
+        return deltr.getLog().get(deltr.getLog().size() - 1).getTotalCost();
+    }
+
+    private static double initialCost(List<DeltrTopDocs> trainSet) {
+        Deltr deltr = new Deltr(1, 1, 0.01, 0.001, 1.0, false);
+        deltr.setSeed(9);
+        deltr.train(trainSet);
+        return deltr.getLog().get(0).getTotalCost();
+    }
+
+    private static double[] trainWithSeed(List<DeltrTopDocs> trainSet, long seed) {
+        Deltr deltr = new Deltr(1, 10, 0.05, 0.001, 1.0, false);
+        deltr.setSeed(seed);
+        deltr.train(trainSet);
+        return deltr.getOmega();
+    }
+
+    private static double[] trainMiniBatch(List<DeltrTopDocs> trainSet, int batchSize) {
+        Deltr deltr = new Deltr(1, 20, 0.05, 0.001, 1.0, false);
+        deltr.setSeed(3);
+        deltr.setBatchSize(batchSize);
+        deltr.train(trainSet);
+        return deltr.getOmega();
+    }
+
+    private static double[] trainInParallel(List<DeltrTopDocs> trainSet, ForkJoinPool pool) {
+        Deltr deltr = new Deltr(1, 20, 0.05, 0.001, 1.0, false);
+        deltr.setSeed(4);
+        deltr.setPool(pool);
+        deltr.train(trainSet);
+        return deltr.getOmega();
+    }
+
+    private static TrainStep evaluate(TrainerBackend backend, double gamma, TrainerData trainerData, double[] omega,
+                                      int[] queries, double[] gradient) {
+        Trainer trainer = new Trainer(gamma, 1, 0.001, 0.001, 0.01);
+        trainer.setBackend(backend);
+        LossFunction loss = trainer.lossFunction(trainerData);
+        return loss.evaluate(omega, queries == null ? loss.allQueries() : queries, gradient);
+    }
+
+    private static Deltr trainWithBackend(List<DeltrTopDocs> trainSet, double gamma, boolean shouldStandardize,
+                                          TrainerBackend backend) {
+        Deltr deltr = new Deltr(gamma, 30, 0.05, 0.001, 1.0, shouldStandardize);
+        deltr.setSeed(6);
+        deltr.setBackend(backend);
+        deltr.train(trainSet);
+        return deltr;
+    }
+
+    private static double[] trainWithSeed(int model) {
+        Deltr deltr = new Deltr(1, 30, 0.05, 0.001, 1.0, true);
+        deltr.setSeed(model);
+        deltr.train(createDataset(100 + model, 6, 10, 4));
+        return deltr.getOmega();
+    }
+
+    /**
+     * Creates a reproducible dataset where the protected documents are judged lower than the rest, so that
+     * the exposure term of the loss contributes to the gradient.
+     */
+    static List<DeltrTopDocs> createDataset(long seed, int numberOfQuestions, int numberOfElementsPerQuestion,
+                                            int numberOfFeatures) {
+        MersenneTwister random = new MersenneTwister(seed);
+        List<DeltrTopDocs> result = new ArrayList<>();
+        for(int i=0; i<numberOfQuestions; i++) {
+            DeltrDoc[] docs = new DeltrDoc[numberOfElementsPerQuestion];
+            for(int j=0; j<numberOfElementsPerQuestion; j++) {
+                boolean isProtected = random.nextDouble() < 0.3;
+                DeltrDocImpl doc = new DeltrDocImpl(j, (float) (random.nextDouble() * (isProtected ? 0.3 : 1.0)),
+                        isProtected);
+                doc.put("0", isProtected);
+                for(int k=1; k<numberOfFeatures; k++) {
+                    doc.put(String.valueOf(k), random.nextGaussian());
+                }
+                docs[j] = doc;
+            }
+            // the first element of the list should be the highest ranking
+            Arrays.sort(docs, (o1, o2) -> Double.compare(o2.judgement(), o1.judgement()));
+
+            DeltrTopDocs topDocs = new DeltrTopDocsImpl(i);
+            topDocs.put(docs);
+            result.add(topDocs);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.fairsearch.deltr.lucene;
+
+import com.github.fairsearch.deltr.Deltr;
+import com.github.fairsearch.deltr.models.FeatureSchema;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DoubleValues;
+import org.apache.lucene.search.DoubleValuesSource;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.Random;
+
+@RunWith(JUnitParamsRunner.class)
+public class DeltrRescorerTests {
+
+    private static final int NUMBER_OF_DOCUMENTS = 60;
+    private static final FeatureSchema SCHEMA = new FeatureSchema("protected", "protected", "f1", "f2");
+
+    @Test
+    @Parameters({"true", "false"})
+    public void testRescore(boolean shouldStandardize) throws IOException {
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, shouldStandardize, 0.3, 1.7,
+                new double[]{-0.5, 2, -1}, SCHEMA);
+        double[][] features = new double[NUMBER_OF_DOCUMENTS][];
+        try(Directory directory = createIndex(features);
+            DirectoryReader reader = DirectoryReader.open(directory)) {
+            assert reader.leaves().size() > 1;
+            IndexSearcher searcher = new IndexSearcher(reader);
+            TopDocs firstPass = searcher.search(new TermQuery(new Term("body", "fair")), 40);
+            ScoreDoc[] hits = firstPass.scoreDocs.clone();
+
+            TopDocs rescored = new DeltrRescorer(deltr).rescore(searcher, firstPass, 10);
+            assert rescored.totalHits == firstPass.totalHits;
+            assert rescored.scoreDocs.length == 10;
+
+            //the best hits of the first pass, in the order of their DELTR scores
+            double[] expected = new double[hits.length];
+            for(int i=0; i<hits.length; i++) {
+                expected[i] = deltr.score(features[hits[i].doc]);
+            }
+            Integer[] order = new Integer[hits.length];
+            for(int i=0; i<order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(expected[b], expected[a]));
+            for(int rank=0; rank<10; rank++) {
+                ScoreDoc hit = rescored.scoreDocs[rank];
+                assert hit.doc == hits[order[rank]].doc;
+                assert hit.score == (float) expected[order[rank]];
+
+                Explanation explanation = new DeltrRescorer(deltr).explain(searcher,
+                        searcher.explain(new TermQuery(new Term("body", "fair")), hit.doc), hit.doc);
+                assert explanation.getValue() == hit.score;
+            }
+            assert rescored.getMaxScore() == rescored.scoreDocs[0].score;
+        }
+    }
+
+    @Test
+    public void testValuesSource() throws IOException {
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, true, 0.3, 1.7, new double[]{-0.5, 2, -1}, SCHEMA);
+        double[][] features = new double[NUMBER_OF_DOCUMENTS][];
+        try(Directory directory = createIndex(features);
+            DirectoryReader reader = DirectoryReader.open(directory)) {
+            DoubleValuesSource source = DeltrValuesSource.fromDoubleFields(deltr);
+            assert !source.needsScores();
+            for(LeafReaderContext leaf : reader.leaves()) {
+                DoubleValues values = source.getValues(leaf, null);
+                for(int doc=0; doc<leaf.reader().maxDoc(); doc++) {
+                    assert values.advanceExact(doc);
+                    assert values.doubleValue() == deltr.score(features[leaf.docBase + doc]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFeatureProvider() throws IOException {
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, true, 0.3, 1.7, new double[]{-0.5, 2, -1}, SCHEMA);
+        double[][] features = new double[NUMBER_OF_DOCUMENTS][];
+        try(Directory directory = createIndex(features);
+            DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            ScoreDoc[] hits = searcher.search(new TermQuery(new Term("body", "fair")), 40).scoreDocs;
+
+            //the hits keep the order of the first pass
+            DocValuesFeatureProvider docs = DocValuesFeatureProvider.read(searcher, hits, SCHEMA);
+            assert docs.numberOfDocuments() == hits.length;
+            double[] scores = deltr.score(docs).scores();
+            for(int j=0; j<hits.length; j++) {
+                assert docs.hit(j) == hits[j];
+                for(int i=0; i<SCHEMA.size(); i++) {
+                    assert docs.feature(j, i) == features[hits[j].doc][i];
+                }
+                assert scores[j] == deltr.score(features[hits[j].doc]);
+            }
+        }
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testValuesSourceChecksNumberOfFeatures() {
+        Deltr deltr = new Deltr(1, 1, 0.001, 0.001, 0.01, false, 0, 1, new double[]{1, 2});
+        new DeltrValuesSource(deltr, Arrays.asList(DoubleValuesSource.fromDoubleField("f1")));
+    }
+
+    /**
+     * indexes documents in several segments, some without a value of "f2"
+     * @param features      receives the features of each document, in the order of the schema
+     */
+    private Directory createIndex(double[][] features) throws IOException {
+        Random random = new Random(42);
+        Directory directory = new RAMDirectory();
+        try(IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for(int doc=0; doc<NUMBER_OF_DOCUMENTS; doc++) {
+                features[doc] = new double[]{random.nextInt(2), random.nextGaussian(),
+                        doc % 7 == 0 ? 0 : random.nextGaussian()};
+
+                Document document = new Document();
+                StringBuilder body = new StringBuilder("search");
+                for(int i=random.nextInt(4); i>=0; i--) {
+                    body.append(" fair");
+                }
+                document.add(new TextField("body", body.toString(), Field.Store.NO));
+                document.add(new DoubleDocValuesField("protected", features[doc][0]));
+                document.add(new DoubleDocValuesField("f1", features[doc][1]));
+                if(doc % 7 != 0) {
+                    document.add(new DoubleDocValuesField("f2", features[doc][2]));
+                }
+                writer.addDocument(document);
+                if(doc % 20 == 19) {
+                    writer.commit();
+                }
+            }
+        }
+        return directory;
+    }
+}